@@ -2,6 +2,12 @@ package asynchronous;
 
 import asynchronous.futures.*;
 
+import asynchronous.exceptions.CoThreadCompleteException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.*;
 
 /**
@@ -12,14 +18,40 @@ import java.util.function.*;
  * then blocks until the CoThread is signaled to run again by its "run" method.
  * The run method returns a promise which is settled by the CoThread yielding,
  * dying (completing execution), or throwing an error.
+ * <p>
+ * The body runs on a carrier: a thread from a ThreadFactory or a pooled thread from
+ * a CoThreadPool. By default that's a virtual thread on JVMs that have them, so a
+ * suspended CoThread costs heap instead of an OS thread, and a thread from
+ * CoThreadPool.getDefault() otherwise.
+ * Control is handed back and forth with LockSupport.park and unpark, optionally
+ * after a short spin (see setSpinCount). The resume method is a blocking
+ * alternative to run that doesn't allocate anything.
  *
  * @param <T> The type of the value yielded with.
  * @author Jesse Russell
  */
 public class CoThread<T> implements AutoCloseable {
-    private final Thread thread;
+    private static volatile Executor defaultCarrier = null;
+    private static volatile int spinCount = 0;
+
+    private static final int YIELDED = 0, RETURNED = 1, THREW = 2;
+
+    private final Executor carrier;
+    private final Runnable body;
     private final Yield yields = new Yield();
-    private volatile Deferred<T> deferred;
+    // the thread running the body, only set while it runs so that close can't interrupt the carrier's next body.
+    private volatile Thread thread = null;
+    private boolean closed = false;
+
+    // the result of the last run, reused for every run:
+    private T value = null;
+    private Throwable error = null;
+    private int outcome = YIELDED;
+
+    // who to tell when the CoThread yields or dies:
+    private volatile Promise<T>.Settle settle = null;
+    private volatile Promise<T> promise = null;
+    private volatile Thread resumer = null;
 
     // flags:
     private volatile boolean running = false;
@@ -49,26 +81,104 @@ public class CoThread<T> implements AutoCloseable {
         return dead;
     }
 
+    /**
+     * @param carrier Runs the body. It must give the body a thread of its own until the body returns, like a
+     *                CoThreadPool or an executor that starts a new thread for every task.
+     */
+    public CoThread(Consumer<Yield> func, String name, Executor carrier) {
+        this.carrier = carrier;
+        this.body = makeBody(func, name);
+    }
+
+    /**
+     * @param factory Makes the thread the CoThread runs on.
+     */
+    public CoThread(Consumer<Yield> func, String name, ThreadFactory factory) {
+        this(func, name, carrierOf(factory));
+    }
+
     public CoThread(Consumer<Yield> func, String name) {
-        thread = new Thread(makeBody(func), name);
+        this(func, name, getDefaultCarrier());
     }
 
     public CoThread(Consumer<Yield> func) {
-        thread = new Thread(makeBody(func));
+        this(func, null, getDefaultCarrier());
+    }
+
+    /**
+     * @return The carrier used by CoThreads that aren't given one. If none has been set: virtual threads if the JVM
+     * supports them, otherwise CoThreadPool.getDefault().
+     */
+    public static Executor getDefaultCarrier() {
+        var carrier = defaultCarrier;
+        if (carrier == null) {
+            final var factory = PromiseExecutors.virtualThreadFactory();
+            carrier = factory != null ? carrierOf(factory) : CoThreadPool.getDefault();
+            defaultCarrier = carrier;
+        }
+        return carrier;
     }
 
-    private Runnable makeBody(Consumer<Yield> func) {
+    /**
+     * Sets the carrier used by CoThreads that aren't given one.
+     */
+    public static void setDefaultCarrier(Executor carrier) {
+        if (carrier == null) throw new NullPointerException();
+        defaultCarrier = carrier;
+    }
+
+    /**
+     * Makes CoThreads that aren't given a carrier run on threads from the given factory. Use Thread::new for the old
+     * behavior of one platform thread per CoThread.
+     */
+    public static void setDefaultThreadFactory(ThreadFactory factory) {
+        setDefaultCarrier(carrierOf(factory));
+    }
+
+    private static Executor carrierOf(ThreadFactory factory) {
+        if (factory == null) throw new NullPointerException();
+        return body -> factory.newThread(body).start();
+    }
+
+    /**
+     * Sets how many times a thread waiting for its turn (a CoThread waiting to be run again or a thread in resume
+     * waiting for the CoThread to yield) checks for it before parking. Spinning saves a park and unpark when the other
+     * side answers quickly but burns CPU otherwise, so it's only worth it with spare cores. 0 (the default) parks
+     * straight away.
+     */
+    public static void setSpinCount(int count) {
+        if (count < 0) throw new IllegalArgumentException("count must not be negative.");
+        spinCount = count;
+    }
+
+    private Runnable makeBody(Consumer<Yield> func, String name) {
         return () -> {
+            final var current = Thread.currentThread();
+            final var carrierName = current.getName();
+            if (name != null)
+                current.setName(name);
+
             synchronized (yields) {
-                try {
-                    func.accept(yields);
-                } catch (Throwable e) {
-                    deferred.settle().reject(e);
-                } finally {
-                    running = false;
-                    dead = true;
-                    deferred.settle().cancel();
+                thread = current;
+                if (closed)
+                    current.interrupt();
+            }
+
+            int outcome = RETURNED;
+            try {
+                func.accept(yields);
+            } catch (Throwable e) {
+                error = e;
+                outcome = THREW;
+            } finally {
+                synchronized (yields) {
+                    thread = null;
                 }
+                if (name != null)
+                    current.setName(carrierName);
+
+                dead = true;
+                handBack(null, outcome);
             }
         };
     }
@@ -79,27 +189,130 @@ public class CoThread<T> implements AutoCloseable {
      * @return Promise which is Settled when the thread yields, dies, or throws an error. If it yields: the promise is
      * resolved with the value yielded. If it dies: the promise is canceled. If it throws and error: the promise is
      * rejected with the error.
+     * @throws IllegalStateException If the CoThread is running because of a call to resume.
+     */
+    public Promise<T> run() {
+        synchronized (yields) {
+            if (running) {
+                if (promise == null)
+                    throw new IllegalStateException("The CoThread is running because of a call to resume.");
+                return promise;
+            }
+            if (dead) {
+                // the last run might have been a resume, which doesn't make a promise.
+                if (promise == null)
+                    promise = outcome == THREW ? Promise.rejected(error) : Promise.cancelled();
+                return promise;
+            }
+
+            final var promiseAndSettle = Promise.<T>externalInit();
+            promise = promiseAndSettle.promise;
+            settle = promiseAndSettle.settle;
+            resumer = null;
+            start();
+
+            return promiseAndSettle.promise;
+        }
+    }
+
+    /**
+     * Runs the CoThread and blocks until it yields. Unlike run, this doesn't allocate anything.
+     *
+     * @return The value yielded.
+     * @throws CoThreadCompleteException If the CoThread finished without yielding or was already dead.
+     * @throws ExecutionException        If the CoThread threw an error. The error is the cause.
+     * @throws IllegalStateException     If the CoThread is already running.
+     * @throws InterruptedException      If this thread is interrupted while waiting. The CoThread keeps running and
+     *                                   join can be used to wait for it again.
      */
-    public synchronized Promise<T> run() {
-        if (running || dead)
-            return deferred.promise();
+    public T resume() throws InterruptedException, ExecutionException, CoThreadCompleteException {
+        final var current = Thread.currentThread();
 
         synchronized (yields) {
-            if (running || dead)
-                return deferred.promise();
+            if (running)
+                throw new IllegalStateException("The CoThread is already running.");
+            if (!dead) {
+                promise = null;
+                settle = null;
+                resumer = current;
+                start();
+            }
+        }
 
+        return join();
+    }
 
-            deferred = new Deferred<T>();
-            running = true;
+    /**
+     * Blocks until the CoThread yields or dies. This is how to go back to waiting after resume was interrupted.
+     * Returns straight away if the CoThread isn't running.
+     *
+     * @return The value yielded.
+     * @throws CoThreadCompleteException If the CoThread finished without yielding.
+     * @throws ExecutionException        If the CoThread threw an error. The error is the cause.
+     * @throws InterruptedException      If this thread is interrupted while waiting. The CoThread keeps running.
+     */
+    public T join() throws InterruptedException, ExecutionException, CoThreadCompleteException {
+        resumer = Thread.currentThread();
 
-            if (!started) {
-                thread.start();
-                started = true;
+        for (int spins = spinCount; running; ) {
+            if (spins > 0) {
+                --spins;
+                Thread.onSpinWait();
+            } else {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    resumer = null;
+                    throw new InterruptedException();
+                }
             }
+        }
+        resumer = null;
+
+        return switch (outcome) {
+            case YIELDED -> value;
+            case THREW -> throw new ExecutionException(error);
+            default -> throw new CoThreadCompleteException();
+        };
+    }
 
-            yields.notifyAll();
+    // called with the yields monitor held
+    private void start() {
+        running = true;
 
-            return deferred.promise();
+        if (!started) {
+            started = true;
+            try {
+                carrier.execute(body);
+            } catch (Throwable e) {
+                started = running = false;
+                throw e;
+            }
+        } else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // called by the CoThread's thread when it yields or dies
+    private void handBack(T value, int outcome) {
+        this.value = value;
+        this.outcome = outcome;
+
+        // read this before running is cleared. After that a new run can replace it.
+        final var settle = this.settle;
+        running = false;
+
+        // read this after running is cleared, or join could miss both the flag and the unpark. At worst this wakes the
+        // thread waiting on the next run, which just goes back to waiting.
+        final var resumer = this.resumer;
+        if (resumer != null)
+            LockSupport.unpark(resumer);
+
+        if (settle != null) {
+            switch (outcome) {
+                case YIELDED -> settle.resolve(value);
+                case THREW -> settle.reject(error);
+                default -> settle.cancel();
+            }
         }
     }
 
@@ -117,19 +330,29 @@ public class CoThread<T> implements AutoCloseable {
          *                              exception appropriately and halt execution. This is how the CoThread
          *                              is closed.
          */
-        public synchronized void accept(T value) throws InterruptedException {
-            running = false;
-            deferred.settle().resolve(value);
+        public void accept(T value) throws InterruptedException {
+            handBack(value, YIELDED);
 
-            notifyAll();
-            while (!running) {
-                wait();
+            for (int spins = spinCount; !running; ) {
+                if (spins > 0) {
+                    --spins;
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.park(this);
+                }
+
+                if (Thread.interrupted())
+                    throw new InterruptedException();
             }
         }
     }
 
     @Override
     public void close() {
-        thread.interrupt();
+        synchronized (yields) {
+            closed = true;
+            if (thread != null)
+                thread.interrupt();
+        }
     }
 }
@@ -0,0 +1,148 @@
+package asynchronous;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of carrier threads for CoThreads. A carrier runs one CoThread body at a time, from its first run until it
+ * returns (including while it's suspended), and then picks up the next body instead of dying. Idle carriers die after
+ * the idle timeout. Once the pool has its maximum number of carriers, further bodies each get a new thread that isn't
+ * pooled, because queueing them could deadlock bodies waiting on each other.
+ * <p>
+ * Between bodies a carrier's interrupt status is cleared and its ThreadLocals and InheritableThreadLocals are wiped,
+ * so nothing a body leaves behind reaches the next one. Wiping them takes reflective access to java.lang.Thread
+ * (--add-opens java.base/java.lang=ALL-UNNAMED). Without it a carrier can't be reused safely, so every body gets a new
+ * thread, just like without a pool (see canReuseThreads).
+ */
+public class CoThreadPool implements Executor {
+    private static volatile CoThreadPool defaultPool = null;
+
+    private final ThreadPoolExecutor carriers;
+    private final ThreadFactory factory;
+
+    /**
+     * @param maxSize     The most carriers the pool keeps.
+     * @param idleTimeout How long an idle carrier waits for a new body before it dies.
+     * @param factory     Makes the carriers and the threads for bodies that don't fit in the pool.
+     */
+    public CoThreadPool(int maxSize, Duration idleTimeout, ThreadFactory factory) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive.");
+        if (factory == null) throw new NullPointerException();
+
+        this.factory = factory;
+        this.carriers = new ThreadPoolExecutor(0, maxSize, idleTimeout.toNanos(), TimeUnit.NANOSECONDS,
+                new SynchronousQueue<>(), factory, (body, pool) -> startUnpooled(body)) {
+            @Override
+            protected void afterExecute(Runnable body, Throwable error) {
+                resetThread(Thread.currentThread());
+            }
+        };
+    }
+
+    /**
+     * A pool of daemon carriers.
+     */
+    public CoThreadPool(int maxSize, Duration idleTimeout) {
+        this(maxSize, idleTimeout, daemonThreadFactory());
+    }
+
+    /**
+     * @return The pool used by CoThreads when the JVM doesn't support virtual threads: up to 1024 daemon carriers that
+     * die after being idle for a minute.
+     */
+    public static CoThreadPool getDefault() {
+        var pool = defaultPool;
+        if (pool == null) {
+            synchronized (CoThreadPool.class) {
+                pool = defaultPool;
+                if (pool == null) {
+                    pool = new CoThreadPool(1024, Duration.ofMinutes(1));
+                    defaultPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @return Whether pools can wipe ThreadLocals and so reuse their threads. If false, every body gets a new thread.
+     */
+    public static boolean canReuseThreads() {
+        return ThreadLocalFields.THREAD_LOCALS != null;
+    }
+
+    /**
+     * Runs the body on an idle carrier, a new carrier or, if the pool is full or can't reuse threads, a new thread that
+     * isn't pooled.
+     */
+    @Override
+    public void execute(Runnable body) {
+        if (canReuseThreads())
+            carriers.execute(body);
+        else
+            startUnpooled(body);
+    }
+
+    /**
+     * @return The number of carriers, busy or idle.
+     */
+    public int getPoolSize() {
+        return carriers.getPoolSize();
+    }
+
+    /**
+     * @return The number of carriers running a body.
+     */
+    public int getActiveCount() {
+        return carriers.getActiveCount();
+    }
+
+    /**
+     * Lets the carriers die once they finish their current bodies.
+     */
+    public void shutdown() {
+        carriers.shutdown();
+    }
+
+    private void startUnpooled(Runnable body) {
+        factory.newThread(body).start();
+    }
+
+    private static void resetThread(Thread thread) {
+        Thread.interrupted();
+        ThreadLocalFields.THREAD_LOCALS.set(thread, null);
+        ThreadLocalFields.INHERITABLE_THREAD_LOCALS.set(thread, null);
+    }
+
+    private static ThreadFactory daemonThreadFactory() {
+        final var count = new AtomicInteger(0);
+        return body -> {
+            final var thread = new Thread(body, "cothread-carrier-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Thread's ThreadLocal maps, or null if they aren't accessible.
+    private static class ThreadLocalFields {
+        static final VarHandle THREAD_LOCALS;
+        static final VarHandle INHERITABLE_THREAD_LOCALS;
+
+        static {
+            VarHandle threadLocals, inheritableThreadLocals;
+            try {
+                final var lookup = MethodHandles.privateLookupIn(Thread.class, MethodHandles.lookup());
+                final var mapClass = Class.forName("java.lang.ThreadLocal$ThreadLocalMap");
+                threadLocals = lookup.findVarHandle(Thread.class, "threadLocals", mapClass);
+                inheritableThreadLocals = lookup.findVarHandle(Thread.class, "inheritableThreadLocals", mapClass);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                threadLocals = inheritableThreadLocals = null;
+            }
+            THREAD_LOCALS = threadLocals;
+            INHERITABLE_THREAD_LOCALS = inheritableThreadLocals;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package asynchronous;
+
+import asynchronous.exceptions.CoThreadCompleteException;
+import exceptionsPlus.UncheckedInterruptedException;
+import exceptionsPlus.UncheckedWrapper;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A lazy producer consumed as an Iterator, a Spliterator or a Stream. The producer is a function run on a CoThread that
+ * yields values with Yield.accept, like a CoThread's body.
+ * <p>
+ * Values are handed over in batches rather than one by one: the producer fills a buffer of batchSize values and only
+ * then hands it to the consumer, which empties it before the producer runs again. So a handoff between threads only
+ * happens once per batch, and the buffer is reused so nothing is allocated per batch either. The producer runs at most
+ * one batch ahead of the consumer.
+ * <p>
+ * A generator can only be consumed once, and by one thread at a time. iterator, spliterator and stream all continue
+ * from wherever the last one left off. Close it if it isn't consumed to the end.
+ *
+ * @param <T> The type of the values yielded.
+ */
+public class Generator<T> implements Iterator<T>, Iterable<T>, AutoCloseable {
+    private static final int DEFAULT_BATCH_SIZE = 64;
+
+    private final CoThread<Object[]> coThread;
+    private final Object[] batch;
+    // the number of values the generator yields, or -1 if it isn't known
+    private final long size;
+
+    // producer side: the number of values in the batch. Read by the consumer once the batch has been handed over.
+    private int count = 0;
+
+    // consumer side:
+    private int index = 0;
+    private int available = 0;
+    private long taken = 0;
+    private boolean finished = false;
+
+    /**
+     * @param batchSize How many values are handed over at a time.
+     * @param size      The exact number of values the producer yields, or -1 if it isn't known. If known, the
+     *                  generator's Spliterator is SIZED.
+     */
+    public Generator(Consumer<Yield> func, int batchSize, long size) {
+        if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be positive.");
+        if (size < -1) throw new IllegalArgumentException("size must be -1 or more.");
+
+        this.batch = new Object[batchSize];
+        this.size = size;
+        this.coThread = new CoThread<>(yields -> {
+            try {
+                func.accept(new Yield(yields));
+            } catch (Throwable e) {
+                // hand over whatever was yielded before the error first.
+                flush(yields);
+                throw e;
+            }
+            flush(yields);
+        });
+    }
+
+    public Generator(Consumer<Yield> func, int batchSize) {
+        this(func, batchSize, -1);
+    }
+
+    public Generator(Consumer<Yield> func) {
+        this(func, DEFAULT_BATCH_SIZE, -1);
+    }
+
+    /**
+     * Functional class for yielding values. Buffers the value and hands the batch over once it's full.
+     */
+    public class Yield {
+        private final CoThread<Object[]>.Yield yields;
+
+        private Yield(CoThread<Object[]>.Yield yields) {
+            this.yields = yields;
+        }
+
+        /**
+         * Yields the value. Blocks if it fills the batch, until the consumer has taken the whole batch and wants more.
+         *
+         * @throws InterruptedException If the generator is closed. Halt the producer.
+         */
+        public void accept(T value) throws InterruptedException {
+            batch[count++] = value;
+            if (count == batch.length) {
+                yields.accept(batch);
+                count = 0;
+            }
+        }
+    }
+
+    // hands over the last, partly filled batch. Called on the CoThread.
+    private void flush(CoThread<Object[]>.Yield yields) {
+        if (count == 0)
+            return;
+        try {
+            yields.accept(batch);
+            count = 0;
+        } catch (InterruptedException e) {
+            // closed. Nobody wants the batch.
+        }
+    }
+
+    /**
+     * Runs the producer until it hands over the next batch.
+     *
+     * @return Whether there's a batch. False once the producer has returned.
+     */
+    private boolean fetch() {
+        if (finished)
+            return false;
+
+        try {
+            coThread.resume();
+            index = 0;
+            available = count;
+            return true;
+        } catch (CoThreadCompleteException e) {
+            finished = true;
+            coThread.close();
+            return false;
+        } catch (ExecutionException e) {
+            finished = true;
+            final var cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (cause instanceof Error error)
+                throw error;
+            throw UncheckedWrapper.uncheckify(cause);
+        } catch (InterruptedException e) {
+            // the producer is still running, so there's no getting back in step with it.
+            close();
+            Thread.currentThread().interrupt();
+            throw new UncheckedInterruptedException(e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index < available || fetch();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        ++taken;
+        return (T) batch[index++];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEachRemaining(Consumer<? super T> action) {
+        do {
+            taken += available - index;
+            while (index < available)
+                action.accept((T) batch[index++]);
+        } while (fetch());
+    }
+
+    /**
+     * @return This generator.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    /**
+     * @return A Spliterator over the values not taken yet. It's ORDERED, and SIZED and SUBSIZED if the generator was
+     * given its size. trySplit splits off the rest of the current batch, so parallel streams get batchSize values at
+     * a time.
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return new BatchSpliterator();
+    }
+
+    /**
+     * @return A sequential stream of the values not taken yet. Closing the stream closes the generator.
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false).onClose(this::close);
+    }
+
+    /**
+     * Stops the producer. It's interrupted in Yield.accept if it's waiting there.
+     */
+    @Override
+    public void close() {
+        finished = true;
+        index = available = 0;
+        coThread.close();
+    }
+
+    private class BatchSpliterator implements Spliterator<T> {
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (!hasNext())
+                return false;
+            action.accept(next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Generator.this.forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (!hasNext())
+                return null;
+
+            // the batch is reused by the producer, so the split gets a copy.
+            final var split = Arrays.copyOfRange(batch, index, available);
+            taken += split.length;
+            index = available;
+            return Spliterators.spliterator(split, Spliterator.ORDERED);
+        }
+
+        @Override
+        public long estimateSize() {
+            return size >= 0 ? size - taken : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return size >= 0 ? ORDERED | SIZED | SUBSIZED : ORDERED;
+        }
+    }
+}
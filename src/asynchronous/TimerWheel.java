@@ -0,0 +1,525 @@
+package asynchronous;
+
+import asynchronous.futures.PromiseExecutors;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timing wheel for running tasks after a delay. One ticker thread per wheel advances through a ring of
+ * buckets, one bucket per tick, and hands every task whose deadline has passed to an executor. Scheduling and
+ * cancelling are O(1): new timeouts are queued for the ticker, which places them in their bucket, and a cancelled
+ * timeout unlinks itself from its bucket straight away. Timeouts further away than one turn of the wheel stay in their
+ * bucket until the turn they're due on.
+ * <p>
+ * Tasks run at most one tick late (more if the ticker is starved), so the tick should be about as fine as the
+ * precision you need. The ticker only runs while the wheel has timeouts in it, and exits shortly after the last one.
+ * It isn't a daemon thread, so pending timeouts keep the JVM alive, and it stays up until every task it handed to the
+ * executor has finished.
+ */
+public class TimerWheel {
+    private static volatile TimerWheel defaultWheel = null;
+    private static final int PENDING = 0, RUNNING = 1, EXPIRED = 2, CANCELLED = 3;
+    // how long the ticker waits with nothing to do before it exits
+    private static final long IDLE_LINGER_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    // the most threads the pool of a wheel made without an executor grows to
+    private static final int WORKER_LIMIT = 64;
+
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final Executor executor;
+    private final long startNanos = System.nanoTime();
+
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger(0);
+    // tasks handed to the executor that haven't finished yet
+    private final AtomicInteger running = new AtomicInteger(0);
+    private volatile Thread ticker = null;
+    private volatile boolean stopped = false;
+    private volatile boolean idle = false;
+
+    // only touched by the ticker:
+    private long lastTick = -1;
+    private final ArrayList<Timeout> expired = new ArrayList<>();
+
+    /**
+     * @param tick        How often the wheel advances. This is the resolution of the timer.
+     * @param bucketCount How many buckets the wheel has, rounded up to a power of two. Timeouts due within bucketCount
+     *                    ticks are only looked at once, later ones once for every turn of the wheel.
+     * @param executor    Where the tasks are run. Null to give the wheel a pool of its own (an elasticPool of up to
+     *                    WORKER_LIMIT threads), so that expiring timeouts reuse idle threads instead of starting one
+     *                    each, and a slow task doesn't hold up the others.
+     */
+    public TimerWheel(Duration tick, int bucketCount, Executor executor) {
+        if (tick.isNegative() || tick.isZero())
+            throw new IllegalArgumentException("tick must be positive.");
+        if (bucketCount <= 0 || bucketCount > (1 << 30))
+            throw new IllegalArgumentException("bucketCount must be between 1 and 2^30.");
+
+        this.tickNanos = tick.toNanos();
+        int length = 1;
+        while (length < bucketCount)
+            length <<= 1;
+
+        this.buckets = new Bucket[length];
+        for (int i = 0; i < length; ++i)
+            buckets[i] = new Bucket();
+        this.mask = length - 1;
+        this.executor = executor != null ? executor : workerPool();
+    }
+
+    /**
+     * A wheel with the given tick and 512 buckets that runs its tasks on a pool of its own.
+     */
+    public TimerWheel(Duration tick) {
+        this(tick, 512, null);
+    }
+
+    /**
+     * @return The wheel used by Timing and Async. If none has been set: a wheel with a 1 millisecond tick.
+     */
+    public static TimerWheel getDefault() {
+        var wheel = defaultWheel;
+        if (wheel == null) {
+            synchronized (TimerWheel.class) {
+                wheel = defaultWheel;
+                if (wheel == null) {
+                    wheel = new TimerWheel(Duration.ofMillis(1));
+                    defaultWheel = wheel;
+                }
+            }
+        }
+        return wheel;
+    }
+
+    /**
+     * Sets the wheel used by Timing and Async. Timeouts already on the old wheel stay there.
+     */
+    public static void setDefault(TimerWheel wheel) {
+        if (wheel == null) throw new NullPointerException();
+        defaultWheel = wheel;
+    }
+
+    /**
+     * @return The time between ticks.
+     */
+    public Duration getTick() {
+        return Duration.ofNanos(tickNanos);
+    }
+
+    /**
+     * @return The number of timeouts in the wheel, not counting ones that were scheduled since the last tick.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Runs the task after the given delay.
+     *
+     * @return The timeout, which can be used to cancel the task.
+     * @throws IllegalStateException If the wheel has been stopped.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(new Timeout(task, deadlineAfter(unit.toNanos(delay)), 0, false));
+    }
+
+    /**
+     * Like schedule, but the task runs on the ticker itself instead of being handed to the executor. Only for tasks
+     * that run no user code, such as flipping a flag or waking a waiter: a slow or blocking one holds up every other
+     * timeout in the wheel. Settling a promise doesn't qualify, since it runs the promise's callbacks on the spot.
+     * Whatever the task throws is dropped.
+     *
+     * @return The timeout, which can be used to cancel the task.
+     * @throws IllegalStateException If the wheel has been stopped.
+     */
+    public Timeout scheduleOnTicker(Runnable task, long delay, TimeUnit unit) {
+        return add(new Timeout(task, deadlineAfter(unit.toNanos(delay)), 0, true));
+    }
+
+    /**
+     * Runs the task after the given delay.
+     *
+     * @return The timeout, which can be used to cancel the task.
+     * @throws IllegalStateException If the wheel has been stopped.
+     */
+    public Timeout schedule(Runnable task, Duration delay) {
+        return schedule(task, delay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs the task after the initial delay and then once every period, measured from when each run was due. Runs
+     * never overlap: if a run takes longer than the period, the next one starts as soon as it finishes. The same
+     * timeout is put back in the wheel after every run. If the task throws, it isn't run again.
+     *
+     * @return The timeout, which can be used to stop the task.
+     * @throws IllegalStateException If the wheel has been stopped.
+     */
+    public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) throw new IllegalArgumentException("period must be positive.");
+        return add(new Timeout(task, deadlineAfter(unit.toNanos(initialDelay)), clamp(unit.toNanos(period)), false));
+    }
+
+    /**
+     * Runs the task after the initial delay and then again the given delay after each run finishes. The same timeout
+     * is put back in the wheel after every run. If the task throws, it isn't run again.
+     *
+     * @return The timeout, which can be used to stop the task.
+     * @throws IllegalStateException If the wheel has been stopped.
+     */
+    public Timeout scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) throw new IllegalArgumentException("delay must be positive.");
+        return add(new Timeout(task, deadlineAfter(unit.toNanos(initialDelay)), -clamp(unit.toNanos(delay)), false));
+    }
+
+    /**
+     * Stops the ticker and cancels every timeout that hasn't expired. The wheel can't be used after this.
+     */
+    public void stop() {
+        stopped = true;
+        final var ticker = this.ticker;
+        if (ticker != null)
+            LockSupport.unpark(ticker);
+    }
+
+    // its threads are daemons, but the ticker keeps the JVM alive while any of them is running a task.
+    private static Executor workerPool() {
+        return PromiseExecutors.elasticPool(WORKER_LIMIT);
+    }
+
+    // nanoTime values can only be compared when they're less than 2^63 apart, so delays are capped at half that
+    // (about 146 years). toNanos already saturates instead of overflowing.
+    private static long clamp(long nanos) {
+        return Math.min(Math.max(0, nanos), Long.MAX_VALUE / 2);
+    }
+
+    private static long deadlineAfter(long nanos) {
+        return System.nanoTime() + clamp(nanos);
+    }
+
+    private Timeout add(Timeout timeout) {
+        if (stopped) throw new IllegalStateException("The timer wheel has been stopped.");
+
+        added.add(timeout);
+        wakeTicker();
+
+        return timeout;
+    }
+
+    // makes sure there's a ticker to pick up what was just added. Called after adding to the added queue.
+    private void wakeTicker() {
+        var ticker = this.ticker;
+        if (ticker == null) {
+            synchronized (this) {
+                ticker = this.ticker;
+                if (ticker == null) {
+                    // not a daemon, so that pending timeouts keep the JVM alive like a sleeping thread would. The
+                    // ticker exits once the wheel has been empty for a while.
+                    ticker = new Thread(this::tick, "timer-wheel");
+                    this.ticker = ticker;
+                    ticker.start();
+                    return;
+                }
+            }
+        }
+        // a busy ticker picks up new timeouts on its next tick, so only an idle one needs waking.
+        if (idle)
+            LockSupport.unpark(ticker);
+    }
+
+    /**
+     * Called by the ticker when the wheel has been empty for IDLE_LINGER.
+     *
+     * @return Whether the ticker should exit. False if a timeout was added in the meantime or a task handed
+     * to the executor is still running.
+     */
+    private boolean retire() {
+        // clear the ticker before looking at the queue. add queues before it looks at the ticker, so either it sees
+        // there's no ticker and starts one, or this sees what it queued.
+        ticker = null;
+        if (added.isEmpty() && size.get() == 0 && running.get() == 0)
+            return true;
+
+        synchronized (this) {
+            if (ticker != null)
+                return true; // add already started a new one.
+            ticker = Thread.currentThread();
+            return false;
+        }
+    }
+
+    private long currentTick() {
+        return (System.nanoTime() - startNanos) / tickNanos;
+    }
+
+    // the ticker thread's loop
+    private void tick() {
+        while (!stopped) {
+            final long now = currentTick();
+            if (size.get() == 0)
+                lastTick = now - 1;
+
+            addAdded(now);
+
+            // catch up on any missed ticks. Past one turn of the wheel every bucket has been visited anyway.
+            for (long t = Math.max(lastTick + 1, now - mask); t <= now; ++t)
+                buckets[(int) (t & mask)].expire(now);
+            lastTick = now;
+
+            for (final var timeout : expired)
+                timeout.expire();
+            expired.clear();
+
+            if (size.get() == 0) {
+                idle = true;
+                if (added.isEmpty() && !stopped) {
+                    final long idleSince = System.nanoTime();
+                    LockSupport.parkNanos(this, IDLE_LINGER_NANOS);
+                    if (added.isEmpty() && !stopped && System.nanoTime() - idleSince >= IDLE_LINGER_NANOS && retire()) {
+                        idle = false;
+                        return;
+                    }
+                }
+                idle = false;
+            } else {
+                final long untilNextTick = startNanos + (now + 1) * tickNanos - System.nanoTime();
+                if (untilNextTick > 0)
+                    LockSupport.parkNanos(this, untilNextTick);
+            }
+        }
+
+        // stopped
+        for (final var bucket : buckets) {
+            synchronized (bucket) {
+                for (var timeout = bucket.head; timeout != null; timeout = timeout.next)
+                    expired.add(timeout);
+                bucket.clear();
+            }
+        }
+        Timeout timeout;
+        while ((timeout = added.poll()) != null)
+            expired.add(timeout);
+        for (final var t : expired)
+            t.cancel();
+        expired.clear();
+    }
+
+    private void addAdded(long now) {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            final long deadlineOffset = timeout.deadlineNanos - startNanos;
+            // round up so that the task never runs early. Anything already due goes in the current bucket.
+            final long deadlineTick = Math.max(now, (deadlineOffset + tickNanos - 1) / tickNanos);
+            timeout.deadlineTick = deadlineTick;
+
+            final var bucket = buckets[(int) (deadlineTick & mask)];
+            synchronized (bucket) {
+                bucket.link(timeout);
+                // cancel() only unlinks timeouts that are already in a bucket, so one cancelled on its way in is
+                // taken out here.
+                if (timeout.state != PENDING)
+                    bucket.unlink(timeout);
+            }
+        }
+    }
+
+    private static final VarHandle STATE;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(Timeout.class, "state", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // a doubly linked list of timeouts, locked by its own monitor
+    private final class Bucket {
+        private Timeout head = null;
+
+        void link(Timeout timeout) {
+            timeout.next = head;
+            if (head != null)
+                head.prev = timeout;
+            head = timeout;
+            timeout.bucket = this;
+            size.incrementAndGet();
+        }
+
+        void unlink(Timeout timeout) {
+            if (timeout.prev != null)
+                timeout.prev.next = timeout.next;
+            else
+                head = timeout.next;
+            if (timeout.next != null)
+                timeout.next.prev = timeout.prev;
+
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+            size.decrementAndGet();
+        }
+
+        void clear() {
+            for (var timeout = head; timeout != null; ) {
+                final var next = timeout.next;
+                timeout.prev = timeout.next = null;
+                timeout.bucket = null;
+                size.decrementAndGet();
+                timeout = next;
+            }
+            head = null;
+        }
+
+        // moves the timeouts that are due to the expired list
+        synchronized void expire(long now) {
+            var timeout = head;
+            while (timeout != null) {
+                final var next = timeout.next;
+                if (timeout.deadlineTick <= now) {
+                    unlink(timeout);
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    /**
+     * A task scheduled on a TimerWheel.
+     */
+    public final class Timeout {
+        private final Runnable task;
+        // positive: fixed rate, negative: fixed delay, zero: runs once
+        private final long period;
+        private final boolean onTicker;
+        private final Runnable runner = this::runOnExecutor;
+        private volatile int state = PENDING;
+        private volatile Bucket bucket = null;
+
+        // written before the timeout is queued for the ticker:
+        private long deadlineNanos;
+
+        // only touched with the bucket locked:
+        private long deadlineTick;
+        private Timeout prev = null, next = null;
+
+        private Timeout(Runnable task, long deadlineNanos, long period, boolean onTicker) {
+            if (task == null) throw new NullPointerException();
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+            this.period = period;
+            this.onTicker = onTicker;
+        }
+
+        /**
+         * Stops the task from running and takes the timeout out of the wheel. A periodic task that is running when
+         * this is called finishes its current run and then stops.
+         *
+         * @return Whether the task was stopped. False if a one-shot task has already been handed to the executor or if
+         * the timeout was already cancelled.
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)
+                    && !(period != 0 && STATE.compareAndSet(this, RUNNING, CANCELLED)))
+                return false;
+
+            final var bucket = this.bucket;
+            if (bucket != null) {
+                synchronized (bucket) {
+                    if (this.bucket == bucket)
+                        bucket.unlink(this);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return Whether the timeout was cancelled.
+         */
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        /**
+         * @return Whether the task has been handed to the executor for the last time: a one-shot task that has
+         * expired or a periodic task that threw.
+         */
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        /**
+         * @return Whether the timeout is periodic.
+         */
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        /**
+         * @return The time left until the task is next due, or zero if it's due already.
+         */
+        public Duration getDelay() {
+            return Duration.ofNanos(Math.max(0, deadlineNanos - System.nanoTime()));
+        }
+
+        // called by the ticker once the timeout is out of its bucket
+        private void expire() {
+            if (!STATE.compareAndSet(this, PENDING, period == 0 ? EXPIRED : RUNNING))
+                return;
+
+            if (onTicker) {
+                try {
+                    run();
+                } catch (Throwable e) {
+                    // the ticker has to keep going for every other timeout.
+                }
+                return;
+            }
+
+            running.incrementAndGet();
+            try {
+                executor.execute(runner);
+            } catch (RejectedExecutionException e) {
+                runner.run();
+            }
+        }
+
+        private void runOnExecutor() {
+            try {
+                run();
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        private void run() {
+            if (period == 0) {
+                task.run();
+                return;
+            }
+
+            try {
+                task.run();
+            } catch (Throwable e) {
+                STATE.compareAndSet(this, RUNNING, EXPIRED);
+                throw e;
+            }
+
+            deadlineNanos = period > 0 ? deadlineNanos + period : System.nanoTime() - period;
+            if (STATE.compareAndSet(this, RUNNING, PENDING) && !stopped) {
+                added.add(this);
+                // the ticker may have gone idle, or even exited, while the task ran.
+                wakeTicker();
+            }
+        }
+    }
+}
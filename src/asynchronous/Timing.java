@@ -1,37 +1,49 @@
 package asynchronous;
 
+import java.util.concurrent.TimeUnit;
 import java.util.function.*;
 
 import asynchronous.futures.Promise;
+import asynchronous.futures.Task;
 
+/**
+ * Delayed functions. Every timeout is scheduled on TimerWheel.getDefault(), so no thread is tied up while waiting.
+ * Pending timeouts keep the JVM alive, since the wheel's ticker isn't a daemon thread, so a timeout set before main
+ * returns still runs. The function runs on the wheel's executor, which for the default wheel is a small pool of its
+ * own, so neither a timeout nor an interval tick starts a thread.
+ */
 public class Timing {
 	public static Promise<Void> setTimeout(Runnable func, long milliseconds, int nanoseconds){
-		final var promiseAndThread = Promise.<Void>threadInit(settle -> {
+		final var promiseAndSettle = Promise.<Void>externalInit();
+		final var settle = promiseAndSettle.settle;
+
+		schedule(() -> {
 			try {
-				Thread.sleep(milliseconds, nanoseconds);
 				func.run();
 				settle.resolve();
 			}
 			catch(Throwable e) {
 				settle.reject(e);
 			}
-		});
-		
-		return promiseAndThread.promise;
+		}, milliseconds, nanoseconds, settle);
+
+		return promiseAndSettle.promise;
 	}
 	
 	public static <T> Promise<T> setTimeout(Supplier<T> func, long milliseconds, int nanoseconds){
-		final var promiseAndThread = Promise.<T>threadInit(settle -> {
+		final var promiseAndSettle = Promise.<T>externalInit();
+		final var settle = promiseAndSettle.settle;
+
+		schedule(() -> {
 			try {
-				Thread.sleep(milliseconds, nanoseconds);
 				settle.resolve(func.get());
 			}
 			catch(Throwable e) {
 				settle.reject(e);
 			}
-		});
-		
-		return promiseAndThread.promise;
+		}, milliseconds, nanoseconds, settle);
+
+		return promiseAndSettle.promise;
 	}
 	
 	public static Promise<Void> setTimeout(Runnable func, long sleepForMilliseconds) {
@@ -43,6 +55,168 @@ public class Timing {
 	}
 
 	public static Promise<Void> setTimeout(long sleepForMilliseconds) {
-		return setTimeout(() -> null, sleepForMilliseconds, 0);
+		return setTimeout(sleepForMilliseconds, 0);
+	}
+
+	/**
+	 * @return A promise that resolves after the given time.
+	 */
+	public static Promise<Void> setTimeout(long milliseconds, int nanoseconds) {
+		final var promiseAndSettle = Promise.<Void>externalInit();
+		final var settle = promiseAndSettle.settle;
+
+		schedule(settle::resolve, milliseconds, nanoseconds, settle);
+
+		return promiseAndSettle.promise;
+	}
+
+	// cancellable variants:
+
+	/**
+	 * Like setTimeout but cancelling the returned task takes the timeout out of the timer wheel, so the function
+	 * never runs.
+	 */
+	public static Task<Void> setTimeoutTask(Runnable func, long milliseconds, int nanoseconds) {
+		return setTimeoutTask(() -> {
+			func.run();
+			return null;
+		}, milliseconds, nanoseconds);
+	}
+
+	/**
+	 * Like setTimeout but cancelling the returned task takes the timeout out of the timer wheel, so the function
+	 * never runs.
+	 */
+	public static <T> Task<T> setTimeoutTask(Supplier<T> func, long milliseconds, int nanoseconds) {
+		final var canceler = new TimeoutCanceler();
+		final var task = new Task<T>(settle -> canceler.timeout = schedule(() -> {
+			try {
+				// the task may have been cancelled just as the timeout expired. If it hasn't been stored yet, it hasn't
+				// been returned yet either, so it can't have been cancelled.
+				final var stored = canceler.task;
+				if (stored != null && stored.isDone())
+					return;
+
+				settle.resolve(func.get());
+			}
+			catch(Throwable e) {
+				settle.reject(e);
+			}
+		}, milliseconds, nanoseconds, settle), canceler);
+		canceler.task = task;
+
+		return task;
+	}
+
+	public static Task<Void> setTimeoutTask(Runnable func, long milliseconds) {
+		return setTimeoutTask(func, milliseconds, 0);
+	}
+
+	public static <T> Task<T> setTimeoutTask(Supplier<T> func, long milliseconds) {
+		return setTimeoutTask(func, milliseconds, 0);
+	}
+
+	public static Task<Void> setTimeoutTask(long milliseconds) {
+		return setTimeoutTask(milliseconds, 0);
+	}
+
+	/**
+	 * @return A task that resolves after the given time, unless it's cancelled first.
+	 */
+	public static Task<Void> setTimeoutTask(long milliseconds, int nanoseconds) {
+		final var canceler = new TimeoutCanceler();
+		final var task = new Task<Void>(settle -> canceler.timeout = schedule(settle::resolve, milliseconds, nanoseconds, settle), canceler);
+		canceler.task = task;
+
+		return task;
+	}
+
+	// intervals:
+
+	/**
+	 * Runs the function every period milliseconds, measured from when each run was due, until the returned task is
+	 * cancelled. Runs never overlap. If the function throws, it stops and the task is rejected with the error. The
+	 * task never resolves.
+	 */
+	public static Task<Void> setInterval(Runnable func, long periodMilliseconds) {
+		return setInterval(func, periodMilliseconds, periodMilliseconds, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs the function after the initial delay and then every period, measured from when each run was due, until
+	 * the returned task is cancelled. Runs never overlap. If the function throws, it stops and the task is rejected
+	 * with the error. The task never resolves.
+	 */
+	public static Task<Void> setInterval(Runnable func, long initialDelay, long period, TimeUnit unit) {
+		final var canceler = new TimeoutCanceler();
+		final var task = new Task<Void>(settle -> canceler.timeout = TimerWheel.getDefault()
+				.scheduleAtFixedRate(intervalBody(func, settle, canceler), initialDelay, period, unit), canceler);
+		canceler.task = task;
+		// the first run may have thrown before the timeout was stored.
+		if (task.isDone())
+			canceler.accept(false);
+
+		return task;
+	}
+
+	/**
+	 * Runs the function after the initial delay and then again the given delay after each run finishes, until the
+	 * returned task is cancelled. If the function throws, it stops and the task is rejected with the error. The task
+	 * never resolves.
+	 */
+	public static Task<Void> setIntervalWithFixedDelay(Runnable func, long initialDelay, long delay, TimeUnit unit) {
+		final var canceler = new TimeoutCanceler();
+		final var task = new Task<Void>(settle -> canceler.timeout = TimerWheel.getDefault()
+				.scheduleWithFixedDelay(intervalBody(func, settle, canceler), initialDelay, delay, unit), canceler);
+		canceler.task = task;
+		// the first run may have thrown before the timeout was stored.
+		if (task.isDone())
+			canceler.accept(false);
+
+		return task;
+	}
+
+	private static Runnable intervalBody(Runnable func, Promise<Void>.Settle settle, TimeoutCanceler canceler) {
+		return () -> {
+			try {
+				func.run();
+			}
+			catch(Throwable e) {
+				settle.reject(e);
+				canceler.accept(false);
+			}
+		};
+	}
+
+	/**
+	 * Schedules the task on the default wheel, or rejects the promise behind settle if the time is out of range, like
+	 * Thread.sleep would have. The task runs on the wheel's executor, never on its ticker: settling the promise runs its
+	 * callbacks on the spot, and a slow one mustn't hold up every other timer.
+	 *
+	 * @return The timeout or null if the promise was rejected.
+	 */
+	private static TimerWheel.Timeout schedule(Runnable task, long milliseconds, int nanoseconds, Promise<?>.Settle settle) {
+		if (milliseconds < 0 || nanoseconds < 0 || nanoseconds > 999999) {
+			settle.reject(new IllegalArgumentException("negative timeout or nanosecond value out of range"));
+			return null;
+		}
+
+		// toNanos saturates, but adding the nanoseconds could still overflow.
+		final long nanos = TimeUnit.MILLISECONDS.toNanos(milliseconds);
+		final long delay = nanos > Long.MAX_VALUE - nanoseconds ? Long.MAX_VALUE : nanos + nanoseconds;
+		return TimerWheel.getDefault().schedule(task, delay, TimeUnit.NANOSECONDS);
+	}
+
+	// takes the timeout out of the wheel when its task is cancelled
+	private static class TimeoutCanceler implements Consumer<Boolean> {
+		volatile TimerWheel.Timeout timeout;
+		volatile Task<?> task;
+
+		@Override
+		public void accept(Boolean mayInterruptIfRunning) {
+			final var timeout = this.timeout;
+			if (timeout != null)
+				timeout.cancel();
+		}
 	}
 }
@@ -1,17 +1,25 @@
 package asynchronous.asyncAwait;
 
-import java.util.Queue;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.*;
 
 import asynchronous.CoThread;
 import asynchronous.*;
+import asynchronous.exceptions.CoThreadCompleteException;
+import asynchronous.futures.AsyncLocal;
 import asynchronous.futures.Deferred;
+import asynchronous.futures.DoublePromise;
+import asynchronous.futures.IntPromise;
+import asynchronous.futures.LongPromise;
 import asynchronous.futures.Promise;
+import asynchronous.futures.Task;
 import asynchronous.futures.exceptions.FutureCancellationException;
+import asynchronous.futures.exceptions.FutureTimeoutException;
 import atom.Atom;
 import exceptionsPlus.UncheckedWrapper;
 import functionPlus.*;
@@ -24,18 +32,46 @@ import functionPlus.*;
  */
 public class Async {
     private final AtomicInteger runningInstanceCount = new AtomicInteger(0);
-    private final Queue<AsyncSupplier<?>.CalledInstance> executionQueue = new ConcurrentLinkedQueue<>();
-    private final Object executeWaitLock = new Object();
+    private final Scheduler scheduler = new Scheduler(() -> runningInstanceCount.get() == 0);
+    private volatile int awaitSpinCount = 0;
+    private volatile boolean eagerStart = false;
+
+    // the deadline (in System.nanoTime) of the calls made in the current context. Only made once a deadline is set, so
+    // that nobody pays for AsyncLocal before then.
+    private static volatile AsyncLocal<Long> deadlines = null;
+
+    /**
+     * Sets whether calls to async functions start eagerly. An eager call steps its instance straight away, up to the
+     * instance's first real suspension (awaits on settled futures don't suspend), and only then hands it to the
+     * scheduler. So there's no scheduler hop before the first await, and a call that never suspends returns a settled
+     * promise without waiting for execute. Off by default: calls only queue their instance for execute.
+     * <p>
+     * This is narrower than eager start in C# or JavaScript: the body doesn't run on the calling thread's own stack.
+     * Java can't move a running stack to another thread, so a body started there couldn't be handed to the scheduler
+     * at its first await. It runs on its CoThread as usual while the calling thread waits for it to suspend or finish.
+     * A call that never suspends still makes a CoThread, but no thread is started for it: the default carriers
+     * (CoThreadPool.getDefault(), or virtual threads) lend it one. EagerStartBenchmark measures what's saved.
+     */
+    public void setEagerStart(boolean eager) {
+        eagerStart = eager;
+    }
+
+    /**
+     * Sets how many times await checks a pending future before suspending the instance. Futures that are already
+     * settled never suspend it. Spinning saves a trip through the scheduler for futures that are about to settle but
+     * burns CPU otherwise. 0 (the default) suspends straight away.
+     */
+    public void setAwaitSpinCount(int count) {
+        if (count < 0) throw new IllegalArgumentException("count must not be negative.");
+        awaitSpinCount = count;
+    }
 
     /**
      * Notify Async class that the instance has started
      */
-    private void asyncStartNotify(AsyncSupplier<?>.CalledInstance inst) {
-        synchronized (executeWaitLock) {
-            executionQueue.add(inst);
-            runningInstanceCount.incrementAndGet();
-            executeWaitLock.notify();
-        }
+    private void asyncStartNotify(Instance inst) {
+        runningInstanceCount.incrementAndGet();
+        scheduler.submit(inst);
     }
 
     /**
@@ -43,86 +79,29 @@ public class Async {
      *
      * @param inst The instance awaiting the promise
      */
-    private void asyncAwaitCompleteNotify(AsyncSupplier<?>.CalledInstance inst) {
-        synchronized (executeWaitLock) {
-            executionQueue.add(inst);
-            executeWaitLock.notify();
-        }
+    private void asyncAwaitCompleteNotify(Instance inst) {
+        scheduler.submit(inst);
     }
 
     /**
      * Notify Async class that an instance has completed
      */
     private void asyncCompleteNotify() {
-        synchronized (executeWaitLock) {
-            runningInstanceCount.decrementAndGet();
-            executeWaitLock.notify();
-        }
+        // every execution thread may be waiting for the count to reach 0, so wake all of them.
+        if (runningInstanceCount.decrementAndGet() == 0)
+            scheduler.wakeAll();
     }
 
     /**
-     * Runs all Async instances in the execution queue.
+     * Runs called Async instances until stop is set, or until listen is unset and every instance has completed. Up to
+     * maxThreadCount instances run at once: one on this thread and the rest on helper threads. Each thread has its own
+     * queue and takes work from the others when it runs out (see Scheduler). A maxThreadCount of 0 pauses execution.
+     * Several threads can call execute at once; they share the work.
      *
      * @throws InterruptedException
      */
     public void execute(Atom<Integer> maxThreadCount, Atom<Boolean> listen, Atom<Boolean> stop) throws InterruptedException {
-        try (final var maxThreadCountObserver = maxThreadCount.tempObserve(); final var listenObserver = listen.tempObserve(); final var stopObserver = stop.tempObserve()) {
-
-            maxThreadCountObserver.react(change -> {
-                synchronized (executeWaitLock) {
-                    executeWaitLock.notifyAll();
-                }
-            });
-            stopObserver.react(change -> {
-                if (change.newValue == false)
-                    return;
-
-                synchronized (executeWaitLock) {
-                    executeWaitLock.notifyAll();
-                }
-            });
-            listenObserver.react(change -> {
-                synchronized (executeWaitLock) {
-                    executeWaitLock.notifyAll();
-                }
-            });
-
-            final var threadCount = new AtomicInteger();
-
-            // execution loop
-            do {
-                AsyncSupplier<?>.CalledInstance instance;
-                while (!stop.get() && threadCount.get() < maxThreadCount.get() && (instance = executionQueue.poll()) != null) {
-                    threadCount.incrementAndGet();
-
-                    // execute the instance
-                    // the returned promise will tell us when the instance yields again or if it completes or throws an error.
-                    instance.execute().onSettledRun(() -> {
-                        threadCount.decrementAndGet();
-                        synchronized (executeWaitLock) {
-                            executeWaitLock.notifyAll();
-                        }
-                    });
-                }
-
-                synchronized (executeWaitLock) {
-                    executeWaitLock.notifyAll();
-                    while (!stop.get()) {
-                        // if the max thread count is zero, pause.
-                        if (maxThreadCount.get() != 0) {
-                            // exit conditions
-                            if (!listen.get() && executionQueue.isEmpty() && runningInstanceCount.get() == 0)
-                                break;
-                            // resume conditions
-                            if (!executionQueue.isEmpty()) break;
-                        }
-
-                        executeWaitLock.wait();
-                    }
-                }
-            } while (!stop.get() && !(!listen.get() && executionQueue.isEmpty() && runningInstanceCount.get() == 0));
-
-        }
+        scheduler.execute(maxThreadCount, listen, stop);
     }
 
     public void execute(Atom<Boolean> listen, Atom<Boolean> stop) throws InterruptedException {
@@ -153,54 +132,191 @@ public class Async {
         execute(new Atom<Integer>(1), new Atom<Boolean>(false), new Atom<Boolean>(false));
     }
 
+    // deadlines:
+
+    /**
+     * Runs func with a deadline timeout from now. Calls to async functions made in func have to finish by then, and so
+     * do the calls they make, etc. An await in any of them that is still waiting when the deadline passes cancels what
+     * it awaits and throws a FutureTimeoutException. If there's a sooner deadline already, that one is kept.
+     */
+    public static <R> R withDeadline(Duration timeout, Supplier<R> func) {
+        return deadlines().with(deadlineIn(timeout), func);
+    }
+
+    private static AsyncLocal<Long> deadlines() {
+        var locals = deadlines;
+        if (locals == null) {
+            synchronized (Async.class) {
+                locals = deadlines;
+                if (locals == null)
+                    deadlines = locals = new AsyncLocal<>();
+            }
+        }
+        return locals;
+    }
+
+    // the deadline of the current context, or null if it has none.
+    private static Long currentDeadline() {
+        final var locals = deadlines;
+        return locals != null ? locals.get() : null;
+    }
+
+    // the sooner of the current deadline and timeout from now.
+    private static Long deadlineIn(Duration timeout) {
+        long nanos;
+        try {
+            nanos = timeout.toNanos();
+        } catch (ArithmeticException e) {
+            nanos = Long.MAX_VALUE;
+        }
+        // nanoTime values can only be compared when they're less than 2^63 apart.
+        final long deadline = System.nanoTime() + Math.min(nanos, Long.MAX_VALUE / 2);
+
+        final var current = currentDeadline();
+        return current != null && current - deadline < 0 ? current : deadline;
+    }
+
 
     // Await functional class for awaiting futures in an Async functional class.
     public class Await {
+        private final Instance instance;
         private final CoThread<Promise<?>>.Yield yields;
 
         // can't be instantiated by the user. Only Async and itself (but only Async should)
-        private Await(CoThread<Promise<?>>.Yield yields) {
+        private Await(Instance instance, CoThread<Promise<?>>.Yield yields) {
+            this.instance = instance;
             this.yields = yields;
         }
 
         /**
-         * Awaits the given future, returning its result when it's resolved.
+         * Awaits the given future, returning its result when it's resolved. If the future is already settled, the
+         * result is returned straight away without suspending the instance.
          *
          * @param <T>    The type of the future.
          * @param future The future to await.
          * @return A Result representing the result of future or null if the future is null. The Result is undefined if
          * the future was canceled, or defined with the result of the future if it was not.
-         * @throws UncheckedWrapper Wrapper around all Exceptions checked and un-checked. Will contain whatever
-         *                          exception was thrown.
+         * @throws UncheckedWrapper            Wrapper around all Exceptions checked and un-checked. Will contain whatever
+         *                                     exception was thrown.
+         * @throws FutureCancellationException If the call this await belongs to is cancelled, or if the future was
+         *                                     rejected with one (a nested call that was cancelled). Not wrapped.
+         * @throws FutureTimeoutException      If the call's deadline passes first, in this await or in a nested call
+         *                                     that inherited it. The future is cancelled. Not wrapped.
          */
-        public <T> Result<T> getResult(Future<T> future) throws UncheckedWrapper {
+        public <T> Result<T> getResult(Future<T> future) throws UncheckedWrapper, FutureCancellationException {
+            return getResult(future, currentDeadline());
+        }
+
+        private <T> Result<T> getResult(Future<T> future, Long deadline) throws UncheckedWrapper, FutureCancellationException {
             if (future == null) {
                 return new Result<>(null);
             }
 
             final var promise = Promise.fromFuture(future);
+            waitFor(future::cancel, promise, deadline);
+
+            if (promise.isFulfilled()) {
+                return new Result<>(promise.getResult());
+            } else if (promise.isRejected()) {
+                throw rejection(promise.getError());
+            } else if (promise.isCancelled()) {
+                return new Result<>();
+            } else {
+                throw UncheckedWrapper.uncheckify(new IllegalStateException("The promise given to Async.Await.apply has been settled but is not fulfilled, rejected, or cancelled."));
+            }
+        }
+
+        /**
+         * Suspends the instance until the promise is settled. Only suspends if the promise isn't settled already and
+         * doesn't settle while spinning.
+         *
+         * @param canceler Cancels whatever the promise waits on (the future it was made from for instance). Called with
+         *                 mayInterruptIfRunning if the call is cancelled while waiting.
+         * @throws FutureCancellationException If the call is cancelled, before or while waiting.
+         * @throws FutureTimeoutException      If the call's deadline passes first. The canceler is called with true.
+         */
+        private void waitFor(Consumer<Boolean> canceler, Promise<?> promise) throws UncheckedWrapper, FutureCancellationException {
+            waitFor(canceler, promise, currentDeadline());
+        }
+
+        /**
+         * @param deadline In System.nanoTime, or null for none.
+         */
+        private void waitFor(Consumer<Boolean> canceler, Promise<?> promise, Long deadline) throws UncheckedWrapper, FutureCancellationException {
+            instance.checkCancelled();
+            if (promise.isSettled() || spinUntilSettled(promise))
+                return;
+
+            Instance.Expiry expiry = null;
+            if (deadline != null) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    canceler.accept(true);
+                    throw new FutureTimeoutException(promise);
+                }
+                expiry = instance.expireAfter(remaining);
+            }
 
+            // publish what's awaited before checking for cancellation again, so that cancel either sees it or is seen.
+            instance.awaiting = canceler;
             try {
+                instance.checkCancelled();
                 // yields to Async.execute. wait for the promise to complete. Async.execute will take care of that.
                 yields.accept(promise);
-
-                // at this point yields has stopped blocking which should mean that the promise is complete.
-                if (promise.isSettled()) {
-                    if (promise.isFulfilled()) {
-                        return new Result<>(promise.getResult());
-                    } else if (promise.isRejected()) {
-                        throw promise.getError();
-                    } else if (promise.isCancelled()) {
-                        return new Result<>();
-                    } else {
-                        throw new IllegalStateException("The promise given to Async.Await.apply has been settled but is not fulfilled, rejected, or cancelled.");
-                    }
-                } else {
-                    throw new IllegalStateException("The promise given to Async.Await.apply has not been settled after yielding.");
-                }
-            } catch (Throwable e) {
+            } catch (InterruptedException e) {
+                instance.checkCancelled();
                 throw UncheckedWrapper.uncheckify(e);
+            } finally {
+                instance.awaiting = null;
+                if (expiry != null)
+                    instance.clearExpiry(expiry);
             }
+            // cancel and the deadline wake the instance whether or not the promise is settled.
+            instance.checkCancelled();
+            // a future that got fulfilled or rejected before it could be cancelled keeps its outcome.
+            if (expiry != null && expiry.expired && !promise.isFulfilled() && !promise.isRejected()) {
+                // cancelled here rather than by the timer, whose ticker mustn't run the canceler or the callbacks on
+                // the cancelled promise.
+                canceler.accept(true);
+                throw new FutureTimeoutException(promise);
+            }
+
+            // at this point yields has stopped blocking which should mean that the promise is complete.
+            if (!promise.isSettled())
+                throw UncheckedWrapper.uncheckify(new IllegalStateException("The promise given to Async.Await.apply has not been settled after yielding."));
+        }
+
+        /**
+         * Throws if the settled promise wasn't fulfilled, the same way apply does.
+         */
+        private void checkFulfilled(Promise<?> promise) throws UncheckedWrapper, FutureCancellationException {
+            if (promise.isRejected())
+                throw rejection(promise.getError());
+            else if (promise.isCancelled())
+                throw new FutureCancellationException(promise);
+        }
+
+        /**
+         * @return What an await throws for a rejection. A FutureCancellationException (or FutureTimeoutException) is
+         * thrown as is, even if it was wrapped: a nested call that timed out or was cancelled is rejected with one, and
+         * the caller should be able to catch it the same way whichever await noticed first. Anything else is wrapped.
+         */
+        private RuntimeException rejection(Throwable error) {
+            if (error instanceof FutureCancellationException cancellation)
+                return cancellation;
+            final var wrapped = UncheckedWrapper.uncheckify(error);
+            if (wrapped.getOriginal() instanceof FutureCancellationException cancellation)
+                return cancellation;
+            return wrapped;
+        }
+
+        private boolean spinUntilSettled(Promise<?> promise) {
+            for (int spins = awaitSpinCount; spins > 0; --spins) {
+                if (promise.isSettled())
+                    return true;
+                Thread.onSpinWait();
+            }
+            return promise.isSettled();
         }
 
         /**
@@ -211,7 +327,8 @@ public class Async {
          * @param onCancel called if the future is cancelled. if null: throws a PromiseCancellationException if the future is cancelled.
          * @return result of future or null if the future is null.
          * @throws UncheckedWrapper Wrapper around all Exceptions checked and un-checked. Will contain whatever exception was thrown.
-         *                          This is the only exception thrown by await.apply. PromiseCancellationException: if the future is cancelled and onCancel was null.
+         *                          This is the only exception thrown by await.apply, apart from FutureCancellationException: if the future is cancelled and onCancel was null,
+         *                          or if the call this await belongs to is cancelled (whatever onCancel is).
          */
         public <T> T apply(Future<T> future, Supplier<T> onCancel) throws UncheckedWrapper, FutureCancellationException {
             final var result = getResult(future);
@@ -226,7 +343,77 @@ public class Async {
         }
 
         public <T> T apply(Future<T> future) throws UncheckedWrapper {
-            return apply(future, null);
+            return apply(future, (Supplier<T>) null);
+        }
+
+        /**
+         * Awaits the given future like apply, but for no longer than timeout, or the call's deadline if that's sooner.
+         * No thread is started for the timeout; it's kept on TimerWheel.getDefault().
+         *
+         * @throws FutureTimeoutException      If the time runs out first. The future is cancelled.
+         * @throws FutureCancellationException If the future is cancelled, or the call is.
+         */
+        public <T> T apply(Future<T> future, Duration timeout) throws UncheckedWrapper, FutureCancellationException {
+            final var result = getResult(future, deadlineIn(timeout));
+            if (result.undefined)
+                throw new FutureCancellationException(future);
+            return result.value;
+        }
+
+        /**
+         * Gives the rest of this call a deadline timeout from now, which the calls it makes from then on inherit. An
+         * await still waiting when it passes cancels what it awaits and throws a FutureTimeoutException. A sooner
+         * deadline, set earlier or inherited from the caller, is kept.
+         */
+        public void setDeadline(Duration timeout) {
+            // the body runs in its own context, so this doesn't reach the caller.
+            deadlines().set(deadlineIn(timeout));
+        }
+
+        /**
+         * @return How long is left until the call's deadline (zero once it has passed), or null if it has none.
+         */
+        public Duration getTimeLeft() {
+            final var deadline = currentDeadline();
+            if (deadline == null)
+                return null;
+            return Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+        }
+
+        /**
+         * Awaits the given promise like apply, but returns its result without boxing it.
+         *
+         * @throws UncheckedWrapper            Wrapper around whatever the promise was rejected with.
+         * @throws FutureCancellationException If the promise is cancelled.
+         */
+        public int applyInt(IntPromise promise) throws UncheckedWrapper, FutureCancellationException {
+            waitFor(promise::cancel, promise);
+            checkFulfilled(promise);
+            return promise.getInt();
+        }
+
+        /**
+         * Awaits the given promise like apply, but returns its result without boxing it.
+         *
+         * @throws UncheckedWrapper            Wrapper around whatever the promise was rejected with.
+         * @throws FutureCancellationException If the promise is cancelled.
+         */
+        public long applyLong(LongPromise promise) throws UncheckedWrapper, FutureCancellationException {
+            waitFor(promise::cancel, promise);
+            checkFulfilled(promise);
+            return promise.getLong();
+        }
+
+        /**
+         * Awaits the given promise like apply, but returns its result without boxing it.
+         *
+         * @throws UncheckedWrapper            Wrapper around whatever the promise was rejected with.
+         * @throws FutureCancellationException If the promise is cancelled.
+         */
+        public double applyDouble(DoublePromise promise) throws UncheckedWrapper, FutureCancellationException {
+            waitFor(promise::cancel, promise);
+            checkFulfilled(promise);
+            return promise.getDouble();
         }
 
         /**
@@ -235,14 +422,210 @@ public class Async {
          * @return whatever was returned by the function;
          */
         public <T> T func(Supplier<T> func) {
-            return apply(Promise.asyncGet(func).promise);
+            // a task, so that cancelling the call interrupts the function.
+            final var context = AsyncLocal.Context.capture();
+            return apply(Task.<T>threadInit(settle -> settle.resolve(AsyncLocal.Context.call(context, func))).task);
         }
 
         /**
          * Asynchronously waits for the given function to run in a separate thread.
          */
         public void func(Runnable func) {
-            apply(Promise.asyncRun(func).promise);
+            final var context = AsyncLocal.Context.capture();
+            apply(Task.<Void>threadInit(settle -> {
+                AsyncLocal.Context.run(context, func);
+                settle.resolve(null);
+            }).task);
+        }
+
+        // generators:
+
+        /**
+         * Awaits the next value of the generator. Only suspends the instance if no value is buffered.
+         *
+         * @return Defined with the next value, or undefined once the generator has finished (or was closed) and every
+         * value it emitted before that has been taken.
+         * @throws UncheckedWrapper           Wrapper around the error the generator threw, once the values it emitted
+         *                                     before that have been taken.
+         * @throws FutureCancellationException If the generator was cancelled or timed out (a FutureTimeoutException),
+         *                                     unwrapped like apply throws it, or if this call is cancelled.
+         */
+        public <T> Result<T> next(AsyncGenerator<T> generator) throws UncheckedWrapper, FutureCancellationException {
+            return generator.next(this);
+        }
+
+        // groups:
+
+        /**
+         * Awaits all the futures, suspending the instance once for the whole group rather than once per future. If
+         * one of them is rejected or cancelled, the rest are cancelled straight away and that failure is thrown, the
+         * same way apply would throw it.
+         *
+         * @return The results, in the same order as the futures.
+         * @throws UncheckedWrapper            Wrapper around the error of the first future to be rejected.
+         * @throws FutureCancellationException If a future is cancelled first, or the call is cancelled.
+         */
+        public <T> List<T> all(Iterable<? extends Future<? extends T>> futures) throws UncheckedWrapper, FutureCancellationException {
+            final var promises = new ArrayList<Promise<? extends T>>();
+            scopeRun(scope -> {
+                for (final var future : futures)
+                    promises.add(scope.adopt(future));
+                scope.join();
+            });
+
+            final var results = new ArrayList<T>(promises.size());
+            for (final var promise : promises)
+                results.add(promise.getResult());
+            return results;
+        }
+
+        /**
+         * Awaits the first of the futures to be fulfilled, suspending the instance once for the whole group. The rest
+         * are cancelled as soon as there's a winner.
+         *
+         * @return The result of the first future to be fulfilled.
+         * @throws UncheckedWrapper            Wrapper around the first error, if every future is rejected or cancelled
+         *                                     and at least one was rejected.
+         * @throws FutureCancellationException If every future is cancelled, or the call is cancelled.
+         */
+        public <T> T any(Iterable<? extends Future<T>> futures) throws UncheckedWrapper, FutureCancellationException {
+            final var inputs = new ArrayList<Future<T>>();
+            for (final var future : futures)
+                inputs.add(future);
+
+            final var winner = Promise.anyAndCancelLosers(inputs, true);
+            waitFor(mayInterruptIfRunning -> {
+                for (final var future : inputs)
+                    future.cancel(mayInterruptIfRunning);
+            }, winner);
+
+            if (winner.isFulfilled())
+                return winner.getResult().getResult();
+            else if (winner.isRejected())
+                throw rejection(winner.getError());
+            else
+                throw new FutureCancellationException(winner);
+        }
+
+        /**
+         * Runs the body with a new scope. Futures forked in the scope are its children: once the body returns or
+         * throws, every child that hasn't settled is cancelled, so nothing started in the scope outlives it. A child
+         * that is rejected or cancelled fails the scope, which cancels its siblings straight away.
+         *
+         * @return What the body returns.
+         */
+        public <R> R scopeGet(Function<Scope, R> body) {
+            final var scope = new Scope();
+            try {
+                return body.apply(scope);
+            } finally {
+                scope.cancelChildren(true);
+            }
+        }
+
+        /**
+         * Like scopeGet, for a body that returns nothing.
+         */
+        public void scopeRun(Consumer<Scope> body) {
+            scopeGet(scope -> {
+                body.accept(scope);
+                return null;
+            });
+        }
+
+        /**
+         * A group of child futures, made by Await.scopeGet or Await.scopeRun.
+         */
+        public class Scope {
+            private final ArrayList<Future<?>> children = new ArrayList<>();
+            private final ArrayList<Promise<?>> promises = new ArrayList<>();
+            // the first child to fail: its error, or a FutureCancellationException if it was cancelled.
+            private Throwable failure = null;
+
+            private Scope() {
+            }
+
+            /**
+             * Makes the future a child of the scope.
+             *
+             * @return The future, for convenience: scope.fork(f.applyTask(x)).
+             */
+            public <T, F extends Future<T>> F fork(F child) {
+                adopt(child);
+                return child;
+            }
+
+            /**
+             * Makes the future a child of the scope like fork.
+             *
+             * @return The promise the scope follows the child with. The child is only adapted once, so a foreign
+             * future isn't polled twice.
+             */
+            private <T> Promise<T> adopt(Future<T> child) {
+                final var promise = Promise.fromFuture(child);
+                final boolean failed;
+                synchronized (this) {
+                    children.add(child);
+                    promises.add(promise);
+                    failed = failure != null;
+                }
+
+                if (failed)
+                    child.cancel(true);
+                else
+                    promise.onUnFulfilledRun(() -> fail(child, promise));
+                return promise;
+            }
+
+            /**
+             * Awaits every child forked so far, suspending the instance once for all of them.
+             *
+             * @throws UncheckedWrapper            Wrapper around the error of the first child to be rejected.
+             * @throws FutureCancellationException If a child is cancelled first, or the call is cancelled.
+             */
+            public void join() throws UncheckedWrapper, FutureCancellationException {
+                final List<Promise<?>> group;
+                synchronized (this) {
+                    group = new ArrayList<>(promises);
+                }
+
+                final var joined = Promise.all(group);
+                waitFor(this::cancelChildren, joined);
+
+                if (!joined.isFulfilled())
+                    throwFailure();
+            }
+
+            /**
+             * Cancels every child that hasn't settled.
+             */
+            public void cancelChildren(boolean mayInterruptIfRunning) {
+                final Future<?>[] toCancel;
+                synchronized (this) {
+                    toCancel = children.toArray(new Future<?>[0]);
+                }
+                for (final var child : toCancel) {
+                    if (!child.isDone())
+                        child.cancel(mayInterruptIfRunning);
+                }
+            }
+
+            private void fail(Future<?> child, Promise<?> promise) {
+                synchronized (this) {
+                    if (failure != null)
+                        return;
+                    failure = promise.isRejected() ? promise.getError() : new FutureCancellationException(child);
+                }
+                cancelChildren(true);
+            }
+
+            private void throwFailure() {
+                final Throwable failure;
+                synchronized (this) {
+                    failure = this.failure;
+                }
+                throw rejection(failure);
+            }
         }
 
         // utils:
@@ -251,14 +634,17 @@ public class Async {
          * Asynchronous sleep function. May sleep for longer than the specified time while the instance waits its turn to execute again.
          */
         public void sleep(long milliseconds, int nanoseconds) {
-            apply(Timing.setTimeout(() -> null, milliseconds, nanoseconds));
+            // a task, so that a deadline or cancellation that cuts the sleep short takes the timer out of the wheel. A
+            // call that's already cancelled doesn't schedule one at all.
+            instance.checkCancelled();
+            apply(Timing.setTimeoutTask(milliseconds, nanoseconds));
         }
 
         /**
          * Asynchronous sleep function. May sleep for longer than the specified time while the instance waits its turn to execute again.
          */
         public void sleep(long milliseconds) {
-            apply(Timing.setTimeout(() -> null, milliseconds));
+            sleep(milliseconds, 0);
         }
     }
 
@@ -267,6 +653,241 @@ public class Async {
 // | function classes: |
 // o-------------------o
 
+    /**
+     * Call to an Async function. Runs the function on a CoThread a step at a time: from one await that suspends to the
+     * next. Subclasses keep the function's result and settle the call's promise with it.
+     *
+     * @author jesse
+     */
+    private abstract class Instance extends Scheduler.Job {
+        private final CoThread<Promise<?>> coThread;
+        private volatile Promise<?> promise = null;
+        // set by cancel. Every await after that throws a FutureCancellationException.
+        private volatile boolean cancelled = false;
+        // cancels what the instance is suspended on, set by Await.
+        private volatile Consumer<Boolean> awaiting = null;
+        // the number of times the instance has suspended, and of those the last one it was woken from. The awaited
+        // promise and cancel can both wake the instance; comparing the two makes sure only one of them does.
+        private volatile int suspensions = 0;
+        private final AtomicInteger woken = new AtomicInteger(0);
+        // the timer of the await the instance is suspended in, if the await has a deadline. Set by Await.
+        private volatile Expiry expiry = null;
+        // wakes the instance when the promise it's suspended on settles. Only touched by step.
+        private Waker waker = null;
+
+        Instance(String name) {
+            // the body stays on the CoThread's thread across every await, so the caller's AsyncLocal context only has
+            // to be installed there once.
+            final var context = AsyncLocal.Context.capture();
+            coThread = new CoThread<>(yields -> AsyncLocal.Context.run(context, () -> body(new Await(this, yields))), name);
+        }
+
+        /**
+         * Runs the function and keeps its result. Runs on the CoThread.
+         */
+        abstract void body(Await await);
+
+        /**
+         * Resolves the call's promise with the kept result.
+         */
+        abstract void resolve();
+
+        abstract void reject(Throwable error);
+
+        /**
+         * Starts the call. The promise must be the call's promise.
+         */
+        final void begin(Promise<?> promise) {
+            this.promise = promise;
+
+            if (eagerStart) {
+                // run up to the first suspension here. step hands the instance to the scheduler if it suspends.
+                runningInstanceCount.incrementAndGet();
+                step();
+            } else {
+                // Notify Async class that this instance has started.
+                asyncStartNotify(this);
+            }
+        }
+
+        // runs the instance on the worker's thread until it awaits something or completes.
+        @Override
+        final void step() {
+            if (cancelled && !coThread.isStarted()) {
+                // cancelled before it ever ran. There's nothing to unwind.
+                asyncCompleteNotify();
+                return;
+            }
+
+            // the last suspension is over, however it ended, so its waker mustn't hold on to the instance.
+            if (waker != null)
+                waker.disarm();
+
+            Promise<?> awaited;
+            boolean interrupted = false;
+            try {
+                try {
+                    awaited = coThread.resume();
+                } catch (InterruptedException e) {
+                    // the instance is still running, so keep waiting for it. The worker deals with the interrupt.
+                    interrupted = true;
+                    while (true) {
+                        try {
+                            awaited = coThread.join();
+                            break;
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                }
+            } catch (CoThreadCompleteException e) {
+                coThread.close();
+                resolve();
+                // the running instance count only drops once the body has returned, since a cancelled call's promise
+                // is settled before its body has unwound.
+                asyncCompleteNotify();
+                return;
+            } catch (ExecutionException e) {
+                reject(e.getCause());
+                asyncCompleteNotify();
+                return;
+            } finally {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+
+            final int suspension = ++suspensions;
+            wakeOnSettled(awaited, suspension);
+            // cancel or the timer may have looked before this suspension was counted.
+            final var expiry = this.expiry;
+            if (cancelled || expiry != null && expiry.expired)
+                wake(suspension);
+        }
+
+        /**
+         * Wakes the instance from the suspension once the promise settles. Promise callbacks can't be removed, so if
+         * the instance suspends on the same promise as last time (a timed await retried on a promise that never
+         * settles, say) the callback already on it is re-armed rather than adding another.
+         */
+        private void wakeOnSettled(Promise<?> awaited, int suspension) {
+            final var waker = this.waker;
+            if (waker != null && waker.promise == awaited && !waker.fired) {
+                waker.arm(this, suspension);
+                // it may have fired before it was armed.
+                if (waker.fired)
+                    wake(suspension);
+                return;
+            }
+
+            final var next = new Waker(awaited);
+            next.arm(this, suspension);
+            this.waker = next;
+            awaited.onSettledRun(next);
+        }
+
+        // makes the instance runnable again after the given suspension, unless something else already has.
+        private void wake(int suspension) {
+            if (woken.compareAndSet(suspension - 1, suspension))
+                asyncAwaitCompleteNotify(this);
+        }
+
+        /**
+         * Cancels the call. Called once the call's promise has been cancelled. The instance is woken if it's suspended,
+         * and the await it was suspended in (or its next one) throws a FutureCancellationException, so the body unwinds
+         * and the CoThread is closed when it returns. The future it was awaiting is cancelled too.
+         * <p>
+         * The body's own thread is never interrupted: a body that is interrupted while suspended would carry on
+         * without the scheduler. Blocking work belongs in Await.func, whose thread is interrupted.
+         *
+         * @param mayInterruptIfRunning Passed on to the awaited future.
+         */
+        final void cancel(boolean mayInterruptIfRunning) {
+            cancelled = true;
+
+            final var awaiting = this.awaiting;
+            if (awaiting != null)
+                awaiting.accept(mayInterruptIfRunning);
+
+            wake(suspensions);
+        }
+
+        void checkCancelled() throws FutureCancellationException {
+            if (cancelled)
+                throw new FutureCancellationException(promise);
+        }
+
+        /**
+         * Times out the await about to suspend the instance: after the delay, the instance is woken, and the await
+         * cancels the future it was waiting on. Called on the CoThread.
+         */
+        Expiry expireAfter(long nanos) {
+            final var expiry = new Expiry(suspensions + 1);
+            this.expiry = expiry;
+            // on the ticker: expiring only flips a flag and wakes the instance, which runs no user code.
+            expiry.timeout = TimerWheel.getDefault().scheduleOnTicker(expiry, nanos, TimeUnit.NANOSECONDS);
+            return expiry;
+        }
+
+        void clearExpiry(Expiry expiry) {
+            this.expiry = null;
+            if (expiry.timeout != null)
+                expiry.timeout.cancel();
+        }
+
+        // the deadline of one await.
+        private final class Expiry implements Runnable {
+            // the suspension the await is in
+            private final int suspension;
+            private volatile boolean expired = false;
+            private TimerWheel.Timeout timeout = null;
+
+            Expiry(int suspension) {
+                this.suspension = suspension;
+            }
+
+            @Override
+            public void run() {
+                if (expiry != this)
+                    return;
+
+                expired = true;
+                // only wake the suspension this await is in. If it hasn't been counted yet, step wakes it instead.
+                if (suspensions == suspension)
+                    wake(suspension);
+            }
+        }
+    }
+
+    // the callback an instance leaves on the promise it's suspended on. Disarmed once the suspension is over, so that a
+    // promise that never settles only holds on to the waker, not to the instance.
+    private static final class Waker implements Runnable {
+        private final Promise<?> promise;
+        private volatile Instance instance = null;
+        private volatile int suspension = 0;
+        private volatile boolean fired = false;
+
+        Waker(Promise<?> promise) {
+            this.promise = promise;
+        }
+
+        void arm(Instance instance, int suspension) {
+            this.suspension = suspension;
+            this.instance = instance;
+        }
+
+        void disarm() {
+            instance = null;
+        }
+
+        @Override
+        public void run() {
+            fired = true;
+            final var instance = this.instance;
+            // a stale suspension number is harmless: wake only wakes the suspension the instance is in.
+            if (instance != null)
+                instance.wake(suspension);
+        }
+    }
+
     /**
      * Asynchronous function used for asynchronous programming. Call Async.execute at the end of the main method to run called Async functions.
      *
@@ -294,51 +915,56 @@ public class Async {
         }
 
         public Promise<T> get() {
-            var inst = new CalledInstance();
-            return inst.start();
+            return call(func).promise();
         }
 
+        /**
+         * Calls the function like get, but returns a task that can cancel the call. Cancelling it makes the await the
+         * call is suspended in throw a FutureCancellationException and cancels the future being awaited.
+         */
+        public Task<T> getTask() {
+            return call(func).task();
+        }
 
         /**
-         * Call to an Async function.
-         *
-         * @author jesse
+         * Calls the function with the given body instead of its own. This is how the functions with arguments pass
+         * them: each call gets a body that closes over its own arguments.
          */
-        private class CalledInstance {
-            private final CoThread<Promise<?>> coThread;
+        private Deferred<T> call(Function<Await, T> body) {
+            return new CalledInstance(body).start();
+        }
+
+
+        // call to the function
+        private class CalledInstance extends Instance {
+            private final Function<Await, T> func;
             private volatile T result = null;
-            private volatile Deferred<T> deferred;
+            private final Deferred<T> deferred = new Deferred<T>(mayInterruptIfRunning -> cancel(mayInterruptIfRunning));
 
-            CalledInstance() {
-                coThread = new CoThread<>(yields -> {
-                    result = func.apply(new Await(yields));
-                }, name);
+            CalledInstance(Function<Await, T> func) {
+                super(name);
+                this.func = func;
             }
 
-            private synchronized Promise<T> start() {
-                // make a new promise and extract resolve and reject methods
-                deferred = new Deferred<T>();
-
-                // add callback to promise that decrements running instance count when the call completes.
-                deferred.promise().onSettledRun(() -> asyncCompleteNotify());
+            private Deferred<T> start() {
+                begin(deferred.promise());
+                // This promise will resolve when the instance completes successfully, and reject when an error occurs
+                return deferred;
+            }
 
-                // Notify Async class that this instance has started.
-                asyncStartNotify(this);
+            @Override
+            void body(Await await) {
+                result = func.apply(await);
+            }
 
-                // This promise will resolve when the instance completes successfully, and reject when an error occurs
-                return deferred.promise();
+            @Override
+            void resolve() {
+                deferred.settle().resolve(result);
             }
 
-            private synchronized Promise<Promise<?>> execute() {
-                return coThread.run().thenAccept(result -> {
-                    result.onSettledRun(() ->
-                            asyncAwaitCompleteNotify(this));
-                }, error -> {
-                    deferred.settle().reject(error);
-                }, () -> {
-                    coThread.close();
-                    deferred.settle().resolve(this.result);
-                });
+            @Override
+            void reject(Throwable error) {
+                deferred.settle().reject(error);
             }
         }
     }
@@ -362,6 +988,10 @@ public class Async {
             return async.get();
         }
 
+        public Task<Void> getTask() {
+            return async.getTask();
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -369,22 +999,21 @@ public class Async {
 
     private class AsyncNargsFunction<R> {
         private final AsyncSupplier<R> async;
-        private Object[] args = null;
-        private final Lock argsLock = new ReentrantLock();
+        private final BiFunction<Await, Object[], R> func;
 
         public AsyncNargsFunction(BiFunction<Await, Object[], R> func, String name) {
-            async = new AsyncSupplier<>((await) -> {
-                final var args_localCopy = args;
-                argsLock.unlock();
-
-                return func.apply(await, args_localCopy);
-            }, name);
+            this.func = func;
+            // only called through call, which gives every call its own body.
+            async = new AsyncSupplier<>(null, name);
         }
 
         public Promise<R> apply(Object[] args) {
-            argsLock.lock();
-            this.args = args;
-            return async.get();
+            return applyTask(args).promise();
+        }
+
+        public Task<R> applyTask(Object[] args) {
+            // the arguments travel with the call, so concurrent calls don't share anything.
+            return async.call(await -> func.apply(await, args)).task();
         }
 
         public String getName() {
@@ -407,6 +1036,10 @@ public class Async {
             return async.apply(new Object[]{t1});
         }
 
+        public Task<R> applyTask(T1 t1) {
+            return async.applyTask(new Object[]{t1});
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -430,6 +1063,10 @@ public class Async {
             return async.apply(t1);
         }
 
+        public Task<Void> applyTask(T1 t1) {
+            return async.applyTask(t1);
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -450,6 +1087,10 @@ public class Async {
             return async.apply(new Object[]{t1, t2});
         }
 
+        public Task<R> applyTask(T1 t1, T2 t2) {
+            return async.applyTask(new Object[]{t1, t2});
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -473,6 +1114,10 @@ public class Async {
             return async.apply(t1, t2);
         }
 
+        public Task<Void> applyTask(T1 t1, T2 t2) {
+            return async.applyTask(t1, t2);
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -493,6 +1138,10 @@ public class Async {
             return async.apply(new Object[]{t1, t2, t3});
         }
 
+        public Task<R> applyTask(T1 t1, T2 t2, T3 t3) {
+            return async.applyTask(new Object[]{t1, t2, t3});
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -516,6 +1165,10 @@ public class Async {
             return async.apply(t1, t2, t3);
         }
 
+        public Task<Void> applyTask(T1 t1, T2 t2, T3 t3) {
+            return async.applyTask(t1, t2, t3);
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -536,6 +1189,10 @@ public class Async {
             return async.apply(new Object[]{t1, t2, t3, t4});
         }
 
+        public Task<R> applyTask(T1 t1, T2 t2, T3 t3, T4 t4) {
+            return async.applyTask(new Object[]{t1, t2, t3, t4});
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -559,6 +1216,10 @@ public class Async {
             return async.apply(t1, t2, t3, t4);
         }
 
+        public Task<Void> applyTask(T1 t1, T2 t2, T3 t3, T4 t4) {
+            return async.applyTask(t1, t2, t3, t4);
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -579,6 +1240,10 @@ public class Async {
             return async.apply(new Object[]{t1, t2, t3, t4, t5});
         }
 
+        public Task<R> applyTask(T1 t1, T2 t2, T3 t3, T4 t4, T5 t5) {
+            return async.applyTask(new Object[]{t1, t2, t3, t4, t5});
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -602,6 +1267,10 @@ public class Async {
             return async.apply(t1, t2, t3, t4, t5);
         }
 
+        public Task<Void> applyTask(T1 t1, T2 t2, T3 t3, T4 t4, T5 t5) {
+            return async.applyTask(t1, t2, t3, t4, t5);
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -622,6 +1291,10 @@ public class Async {
             return async.apply(new Object[]{t1, t2, t3, t4, t5, t6});
         }
 
+        public Task<R> applyTask(T1 t1, T2 t2, T3 t3, T4 t4, T5 t5, T6 t6) {
+            return async.applyTask(new Object[]{t1, t2, t3, t4, t5, t6});
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -645,6 +1318,10 @@ public class Async {
             return async.apply(t1, t2, t3, t4, t5, t6);
         }
 
+        public Task<Void> applyTask(T1 t1, T2 t2, T3 t3, T4 t4, T5 t5, T6 t6) {
+            return async.applyTask(t1, t2, t3, t4, t5, t6);
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -665,6 +1342,10 @@ public class Async {
             return async.apply(new Object[]{t1, t2, t3, t4, t5, t6, t7});
         }
 
+        public Task<R> applyTask(T1 t1, T2 t2, T3 t3, T4 t4, T5 t5, T6 t6, T7 t7) {
+            return async.applyTask(new Object[]{t1, t2, t3, t4, t5, t6, t7});
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -688,6 +1369,10 @@ public class Async {
             return async.apply(t1, t2, t3, t4, t5, t6, t7);
         }
 
+        public Task<Void> applyTask(T1 t1, T2 t2, T3 t3, T4 t4, T5 t5, T6 t6, T7 t7) {
+            return async.applyTask(t1, t2, t3, t4, t5, t6, t7);
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -708,6 +1393,10 @@ public class Async {
             return async.apply(new Object[]{t1, t2, t3, t4, t5, t6, t7, t8});
         }
 
+        public Task<R> applyTask(T1 t1, T2 t2, T3 t3, T4 t4, T5 t5, T6 t6, T7 t7, T8 t8) {
+            return async.applyTask(new Object[]{t1, t2, t3, t4, t5, t6, t7, t8});
+        }
+
         public String getName() {
             return async.getName();
         }
@@ -731,12 +1420,423 @@ public class Async {
             return async.apply(t1, t2, t3, t4, t5, t6, t7, t8);
         }
 
+        public Task<Void> applyTask(T1 t1, T2 t2, T3 t3, T4 t4, T5 t5, T6 t6, T7 t7, T8 t8) {
+            return async.applyTask(t1, t2, t3, t4, t5, t6, t7, t8);
+        }
+
         public String getName() {
             return async.getName();
         }
 
     }
 
+    /**
+     * What AsyncIntFunction, AsyncLongFunction and AsyncDoubleFunction share: the name, and calls that start, settle
+     * and hand out their primitive promise. A specialization only adds its unboxed entry points, and a Call that runs
+     * the function and resolves the promise without boxing.
+     *
+     * @param <T> The boxed type of the result.
+     * @param <P> The type of promise a call returns.
+     */
+    abstract class PrimitiveAsyncFunction<T, P extends Promise<T>> {
+        private final String name;
+
+        PrimitiveAsyncFunction(String name) {
+            this.name = name == null ? "async" : name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Call to the function.
+         *
+         * @param <S> The settle of the call's promise, which resolves it unboxed.
+         */
+        abstract class Call<S extends Promise<T>.Settle> extends Instance {
+            final P promise;
+            S settle;
+
+            /**
+             * @param newPromise The promise's constructor, which hands it its settle.
+             */
+            Call(Function<Consumer<S>, P> newPromise) {
+                super(name);
+                promise = newPromise.apply(settle -> this.settle = settle);
+            }
+
+            P start() {
+                begin(promise);
+                return promise;
+            }
+
+            Task<T> startTask() {
+                final var task = Task.of(promise, this::cancel);
+                begin(promise);
+                return task;
+            }
+
+            @Override
+            void reject(Throwable error) {
+                settle.reject(error);
+            }
+        }
+    }
+
+    /**
+     * Async function from an int to an int. Calls keep the argument and the result unboxed: nothing is packed into an
+     * Object[], and the call's IntPromise is resolved with resolveInt.
+     */
+    public class AsyncIntFunction extends PrimitiveAsyncFunction<Integer, IntPromise> implements IntFunction<IntPromise> {
+        private final ObjIntToIntFunction<Await> func;
+
+        public AsyncIntFunction(ObjIntToIntFunction<Await> func, String name) {
+            super(name);
+            this.func = func;
+        }
+
+        public AsyncIntFunction(ObjIntToIntFunction<Await> func) {
+            this(func, null);
+        }
+
+        public IntPromise apply(int value) {
+            return new CalledInstance(value).start();
+        }
+
+        /**
+         * Calls the function like apply, but returns a task that can cancel the call, like AsyncFunction.applyTask.
+         * The task's promise is the call's IntPromise, so IntPromise.from(task.promise()) returns it without a copy.
+         */
+        public Task<Integer> applyTaskInt(int value) {
+            return new CalledInstance(value).startTask();
+        }
+
+        private class CalledInstance extends Call<IntPromise.IntSettle> {
+            private final int argument;
+            private volatile int result = 0;
+
+            CalledInstance(int argument) {
+                super(IntPromise::new);
+                this.argument = argument;
+            }
+
+            @Override
+            void body(Await await) {
+                result = func.apply(await, argument);
+            }
+
+            @Override
+            void resolve() {
+                settle.resolveInt(result);
+            }
+        }
+    }
+
+    /**
+     * Async function from a long to a long. Calls keep the argument and the result unboxed: nothing is packed into an
+     * Object[], and the call's LongPromise is resolved with resolveLong.
+     */
+    public class AsyncLongFunction extends PrimitiveAsyncFunction<Long, LongPromise> implements LongFunction<LongPromise> {
+        private final ObjLongToLongFunction<Await> func;
+
+        public AsyncLongFunction(ObjLongToLongFunction<Await> func, String name) {
+            super(name);
+            this.func = func;
+        }
+
+        public AsyncLongFunction(ObjLongToLongFunction<Await> func) {
+            this(func, null);
+        }
+
+        public LongPromise apply(long value) {
+            return new CalledInstance(value).start();
+        }
+
+        /**
+         * Calls the function like apply, but returns a task that can cancel the call, like AsyncFunction.applyTask.
+         * The task's promise is the call's LongPromise, so LongPromise.from(task.promise()) returns it without a copy.
+         */
+        public Task<Long> applyTaskLong(long value) {
+            return new CalledInstance(value).startTask();
+        }
+
+        private class CalledInstance extends Call<LongPromise.LongSettle> {
+            private final long argument;
+            private volatile long result = 0;
+
+            CalledInstance(long argument) {
+                super(LongPromise::new);
+                this.argument = argument;
+            }
+
+            @Override
+            void body(Await await) {
+                result = func.apply(await, argument);
+            }
+
+            @Override
+            void resolve() {
+                settle.resolveLong(result);
+            }
+        }
+    }
+
+    /**
+     * Async function from a double to a double. Calls keep the argument and the result unboxed: nothing is packed into an
+     * Object[], and the call's DoublePromise is resolved with resolveDouble.
+     */
+    public class AsyncDoubleFunction extends PrimitiveAsyncFunction<Double, DoublePromise> implements DoubleFunction<DoublePromise> {
+        private final ObjDoubleToDoubleFunction<Await> func;
+
+        public AsyncDoubleFunction(ObjDoubleToDoubleFunction<Await> func, String name) {
+            super(name);
+            this.func = func;
+        }
+
+        public AsyncDoubleFunction(ObjDoubleToDoubleFunction<Await> func) {
+            this(func, null);
+        }
+
+        public DoublePromise apply(double value) {
+            return new CalledInstance(value).start();
+        }
+
+        /**
+         * Calls the function like apply, but returns a task that can cancel the call, like AsyncFunction.applyTask.
+         * The task's promise is the call's DoublePromise, so DoublePromise.from(task.promise()) returns it without a copy.
+         */
+        public Task<Double> applyTaskDouble(double value) {
+            return new CalledInstance(value).startTask();
+        }
+
+        private class CalledInstance extends Call<DoublePromise.DoubleSettle> {
+            private final double argument;
+            private volatile double result = 0;
+
+            CalledInstance(double argument) {
+                super(DoublePromise::new);
+                this.argument = argument;
+            }
+
+            @Override
+            void body(Await await) {
+                result = func.apply(await, argument);
+            }
+
+            @Override
+            void resolve() {
+                settle.resolveDouble(result);
+            }
+        }
+    }
+
+    /**
+     * Definition of an async generator: an async function that emits a stream of values rather than returning one
+     * result. Its body gets an Await, like any async function, and an emit function. Each call to get starts a new
+     * generator, which consumers pull values from with Await.next.
+     *
+     * @param <T> The type of the values emitted.
+     */
+    public class AsyncGeneratorSupplier<T> implements Supplier<AsyncGenerator<T>> {
+        private final BiConsumer<Await, Consumer<T>> func;
+        private final int capacity;
+        private final AsyncSupplier<Void> async;
+
+        /**
+         * @param capacity How many values a generator buffers. Once its buffer is full, emit suspends the generator
+         *                 until a consumer takes a value, so a generator never holds more than this many values.
+         */
+        public AsyncGeneratorSupplier(BiConsumer<Await, Consumer<T>> func, int capacity, String name) {
+            if (capacity <= 0) throw new IllegalArgumentException("capacity must be positive.");
+            this.func = func;
+            this.capacity = capacity;
+            // only called through call, which gives every generator a body of its own.
+            async = new AsyncSupplier<>(null, name);
+        }
+
+        public AsyncGeneratorSupplier(BiConsumer<Await, Consumer<T>> func, String name) {
+            this(func, 16, name);
+        }
+
+        public AsyncGeneratorSupplier(BiConsumer<Await, Consumer<T>> func) {
+            this(func, null);
+        }
+
+        /**
+         * Starts a new generator.
+         */
+        public AsyncGenerator<T> get() {
+            final var generator = new AsyncGenerator<T>(capacity);
+            final var call = async.call(await -> {
+                func.accept(await, value -> generator.emit(await, value));
+                return null;
+            });
+            generator.started(call.task());
+            return generator;
+        }
+
+        public String getName() {
+            return async.getName();
+        }
+    }
+
+    /**
+     * A running async generator, made by AsyncGeneratorSupplier.get. Values the generator emits go into a bounded
+     * buffer and are taken out by Await.next. A consumer that stops early should close the generator.
+     *
+     * @param <T> The type of the values emitted.
+     */
+    public class AsyncGenerator<T> implements AutoCloseable {
+        // ring buffer of emitted values. null values are allowed.
+        private final Object[] buffer;
+        private int head = 0;
+        private int size = 0;
+        // set once the generator's body has returned, thrown or been cancelled.
+        private boolean finished = false;
+        private Throwable error = null;
+        private boolean closed = false;
+        // settled when a value is emitted or the generator finishes, and when a value is taken. Made on demand.
+        private Promise.PromiseAndSettle<Void> valueWaiter = null;
+        private Promise.PromiseAndSettle<Void> spaceWaiter = null;
+        private volatile Task<Void> task = null;
+
+        private AsyncGenerator(int capacity) {
+            buffer = new Object[capacity];
+        }
+
+        private void started(Task<Void> task) {
+            this.task = task;
+            task.promise().onSettledRun(() -> finished(task.promise()));
+        }
+
+        /**
+         * @return The generator's call: resolved once its body returns, rejected if it throws, cancelled if the
+         * generator is closed first.
+         */
+        public Task<Void> getTask() {
+            return task;
+        }
+
+        /**
+         * Stops the generator: its call is cancelled, so the await or emit it's suspended in throws a
+         * FutureCancellationException, and buffered values are dropped. Await.next returns undefined from then on.
+         */
+        @Override
+        public void close() {
+            final Promise.PromiseAndSettle<Void> valueWaiter;
+            synchronized (this) {
+                if (closed)
+                    return;
+                closed = true;
+                finished = true;
+                Arrays.fill(buffer, null);
+                size = 0;
+
+                valueWaiter = this.valueWaiter;
+                this.valueWaiter = null;
+            }
+            wake(valueWaiter);
+
+            final var task = this.task;
+            if (task != null)
+                task.cancel(true);
+        }
+
+        // called on the generator's CoThread
+        private void emit(Await await, T value) {
+            while (true) {
+                final Promise.PromiseAndSettle<Void> valueWaiter;
+                final Promise<Void> wait;
+                synchronized (this) {
+                    if (closed)
+                        throw new FutureCancellationException(task);
+
+                    if (size < buffer.length) {
+                        buffer[(head + size) % buffer.length] = value;
+                        ++size;
+
+                        valueWaiter = this.valueWaiter;
+                        this.valueWaiter = null;
+                        wait = null;
+                    } else {
+                        if (spaceWaiter == null)
+                            spaceWaiter = Promise.externalInit();
+                        valueWaiter = null;
+                        wait = spaceWaiter.promise;
+                    }
+                }
+
+                if (wait == null) {
+                    wake(valueWaiter);
+                    return;
+                }
+                // the buffer is full. Wait for a consumer to take something.
+                await.apply(wait);
+            }
+        }
+
+        // called on the consumer's CoThread, by Await.next
+        @SuppressWarnings("unchecked")
+        private Result<T> next(Await await) {
+            while (true) {
+                final Promise.PromiseAndSettle<Void> spaceWaiter;
+                final Promise<Void> wait;
+                final T value;
+                synchronized (this) {
+                    if (size > 0) {
+                        value = (T) buffer[head];
+                        buffer[head] = null;
+                        head = (head + 1) % buffer.length;
+                        --size;
+
+                        spaceWaiter = this.spaceWaiter;
+                        this.spaceWaiter = null;
+                        wait = null;
+                    } else if (finished) {
+                        // thrown the way apply throws a rejection, so a generator that was cancelled or timed out
+                        // surfaces the same FutureCancellationException an awaited promise would.
+                        if (error != null)
+                            throw await.rejection(error);
+                        return new Result<>();
+                    } else {
+                        if (valueWaiter == null)
+                            valueWaiter = Promise.externalInit();
+                        spaceWaiter = null;
+                        wait = valueWaiter.promise;
+                        value = null;
+                    }
+                }
+
+                if (wait == null) {
+                    wake(spaceWaiter);
+                    return new Result<>(value);
+                }
+                // nothing buffered. Wait for the generator to emit something or finish.
+                await.apply(wait);
+            }
+        }
+
+        private void finished(Promise<Void> promise) {
+            final Promise.PromiseAndSettle<Void> valueWaiter;
+            synchronized (this) {
+                finished = true;
+                if (promise.isRejected())
+                    error = promise.getError();
+
+                valueWaiter = this.valueWaiter;
+                this.valueWaiter = null;
+            }
+            wake(valueWaiter);
+        }
+
+        // settled outside the monitor, so that nothing the promise's callbacks do happens while holding it.
+        private void wake(Promise.PromiseAndSettle<Void> waiter) {
+            if (waiter != null)
+                waiter.settle.resolve(null);
+        }
+    }
+
     // o------o
     // | def: |
     // o------o
@@ -885,6 +1985,45 @@ public class Async {
         return new AsyncOctoConsumer<>(func, name);
     }
 
+    // primitive specializations. Named apart from def because a lambda like (await, x) -> x would be ambiguous
+    // between them and def(BiFunction).
+    public AsyncIntFunction defInt(ObjIntToIntFunction<Await> func) {
+        return new AsyncIntFunction(func);
+    }
+
+    public AsyncIntFunction defInt(String name, ObjIntToIntFunction<Await> func) {
+        return new AsyncIntFunction(func, name);
+    }
+
+    public AsyncLongFunction defLong(ObjLongToLongFunction<Await> func) {
+        return new AsyncLongFunction(func);
+    }
+
+    public AsyncLongFunction defLong(String name, ObjLongToLongFunction<Await> func) {
+        return new AsyncLongFunction(func, name);
+    }
+
+    public AsyncDoubleFunction defDouble(ObjDoubleToDoubleFunction<Await> func) {
+        return new AsyncDoubleFunction(func);
+    }
+
+    public AsyncDoubleFunction defDouble(String name, ObjDoubleToDoubleFunction<Await> func) {
+        return new AsyncDoubleFunction(func, name);
+    }
+
+    // generators:
+    public <T> AsyncGeneratorSupplier<T> defGenerator(BiConsumer<Await, Consumer<T>> func) {
+        return new AsyncGeneratorSupplier<>(func);
+    }
+
+    public <T> AsyncGeneratorSupplier<T> defGenerator(String name, BiConsumer<Await, Consumer<T>> func) {
+        return new AsyncGeneratorSupplier<>(func, name);
+    }
+
+    public <T> AsyncGeneratorSupplier<T> defGenerator(String name, int capacity, BiConsumer<Await, Consumer<T>> func) {
+        return new AsyncGeneratorSupplier<>(func, capacity, name);
+    }
+
     // special:
     public AsyncRunnable defRunnable(Consumer<Await> func) {
         return new AsyncRunnable(func);
@@ -0,0 +1,301 @@
+package asynchronous.asyncAwait;
+
+import atom.Atom;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Work-stealing scheduler behind Async.execute. Every call to execute runs a group of workers: the calling thread plus
+ * a helper thread for each extra thread allowed by maxThreadCount. A worker runs one job at a time.
+ * <p>
+ * Each worker has its own deque. A job that becomes runnable again goes to the back of the deque of the worker that
+ * last ran it, if that worker is still active. New jobs, and jobs whose worker is gone, go to a shared queue. A worker
+ * takes from the front of its own deque first, then from the shared queue, then steals from the front of another
+ * worker's deque: the job that has waited longest there. The back, where the job just routed to a busy worker sits,
+ * is left to that worker. Idle workers park and are woken one at a time as work arrives, so there is no global lock.
+ */
+final class Scheduler {
+    private final ConcurrentLinkedQueue<Job> injected = new ConcurrentLinkedQueue<>();
+    private final CopyOnWriteArrayList<Worker> workers = new CopyOnWriteArrayList<>();
+    private final BooleanSupplier finished;
+    private final AtomicInteger helperCount = new AtomicInteger(0);
+
+    /**
+     * @param finished Whether every job that has been submitted has finished. Call wakeAll when this becomes true.
+     */
+    Scheduler(BooleanSupplier finished) {
+        this.finished = finished;
+    }
+
+    /**
+     * Something a worker can run.
+     */
+    abstract static class Job {
+        private volatile Worker lastWorker = null;
+
+        /**
+         * Runs the job until it suspends or finishes. If it suspends, it must be submitted again once it can continue.
+         * Mustn't throw; if the worker's thread is interrupted it should leave the interrupt status set.
+         */
+        abstract void step();
+    }
+
+    /**
+     * Makes the job runnable.
+     */
+    void submit(Job job) {
+        final var target = job.lastWorker;
+        if (target != null && target.isActive()) {
+            target.deque.addLast(job);
+
+            if (!target.isActive()) {
+                // the worker stopped in the meantime. If it didn't take the job with it, put it in the shared queue.
+                if (target.deque.remove(job))
+                    injected.add(job);
+                wakeOne(null);
+            } else if (!target.wake()) {
+                // the worker is busy. Let an idle one steal the job rather than wait.
+                wakeOne(target);
+            }
+            return;
+        }
+
+        injected.add(job);
+        wakeOne(null);
+    }
+
+    /**
+     * Wakes every worker so that they check whether they should stop.
+     */
+    void wakeAll() {
+        for (final var worker : workers)
+            LockSupport.unpark(worker.thread);
+    }
+
+    private void wakeOne(Worker except) {
+        for (final var worker : workers) {
+            if (worker != except && worker.isActive() && worker.wake())
+                return;
+        }
+    }
+
+    /**
+     * Runs jobs on the calling thread, and on helper threads so that up to maxThreadCount jobs run at once, until stop
+     * is set, or until listen is unset and every job has finished. A maxThreadCount of 0 pauses the group.
+     *
+     * @throws InterruptedException If the calling thread is interrupted. The helpers stop too.
+     */
+    void execute(Atom<Integer> maxThreadCount, Atom<Boolean> listen, Atom<Boolean> stop) throws InterruptedException {
+        final var group = new Group(maxThreadCount, listen, stop);
+
+        try (final var maxThreadCountObserver = maxThreadCount.tempObserve(); final var listenObserver = listen.tempObserve(); final var stopObserver = stop.tempObserve()) {
+            maxThreadCountObserver.react(change -> group.changed());
+            listenObserver.react(change -> group.changed());
+            stopObserver.react(change -> group.changed());
+
+            final var worker = new Worker(group, 0, Thread.currentThread());
+            group.add(worker);
+            group.addHelpers();
+
+            try {
+                worker.work();
+            } finally {
+                group.callerLeft = true;
+                group.wakeWorkers();
+            }
+        }
+    }
+
+    // the workers started by one call to execute
+    private final class Group {
+        final Atom<Integer> maxThreadCount;
+        final Atom<Boolean> listen;
+        final Atom<Boolean> stop;
+        final ArrayList<Worker> members = new ArrayList<>();
+        // set when the thread that called execute leaves, which stops the helpers
+        volatile boolean callerLeft = false;
+
+        Group(Atom<Integer> maxThreadCount, Atom<Boolean> listen, Atom<Boolean> stop) {
+            this.maxThreadCount = maxThreadCount;
+            this.listen = listen;
+            this.stop = stop;
+        }
+
+        boolean shouldStop() {
+            if (stop.get() || callerLeft)
+                return true;
+            // paused groups don't stop when they run out of work.
+            return maxThreadCount.get() != 0 && !listen.get() && finished.getAsBoolean();
+        }
+
+        synchronized void add(Worker worker) {
+            members.add(worker);
+        }
+
+        // starts helpers until there's a worker for every allowed thread. Helpers above the limit stay parked.
+        synchronized void addHelpers() {
+            while (members.size() < maxThreadCount.get() && !shouldStop()) {
+                final var worker = new Worker(this, members.size(), null);
+                final var helper = new Thread(() -> {
+                    try {
+                        worker.work();
+                    } catch (InterruptedException e) {
+                        // only the thread that called execute is interrupted on purpose.
+                    }
+                }, "async-worker-" + helperCount.incrementAndGet());
+                helper.setDaemon(true);
+                worker.thread = helper;
+                members.add(worker);
+                helper.start();
+            }
+        }
+
+        synchronized void wakeWorkers() {
+            for (final var worker : members)
+                LockSupport.unpark(worker.thread);
+        }
+
+        void changed() {
+            addHelpers();
+            wakeWorkers();
+        }
+    }
+
+    private final class Worker {
+        final Group group;
+        final int index;
+        volatile Thread thread;
+        final ConcurrentLinkedDeque<Job> deque = new ConcurrentLinkedDeque<>();
+        volatile boolean parked = false;
+        volatile boolean stopped = false;
+
+        Worker(Group group, int index, Thread thread) {
+            this.group = group;
+            this.index = index;
+            this.thread = thread;
+        }
+
+        boolean isActive() {
+            return !stopped && index < group.maxThreadCount.get();
+        }
+
+        /**
+         * Unparks the worker if it's parked.
+         *
+         * @return Whether this call woke it.
+         */
+        boolean wake() {
+            if (parked && PARKED.compareAndSet(this, true, false)) {
+                LockSupport.unpark(thread);
+                return true;
+            }
+            return false;
+        }
+
+        void work() throws InterruptedException {
+            workers.add(this);
+            try {
+                while (!group.shouldStop()) {
+                    if (!isActive()) {
+                        giveBack();
+                        idle();
+                        continue;
+                    }
+
+                    final var job = next();
+                    if (job != null) {
+                        job.lastWorker = this;
+                        job.step();
+                        if (Thread.interrupted())
+                            throw new InterruptedException();
+                    } else {
+                        idle();
+                    }
+                }
+            } finally {
+                stopped = true;
+                workers.remove(this);
+                giveBack();
+            }
+        }
+
+        private Job next() {
+            var job = deque.pollFirst();
+            if (job == null)
+                job = injected.poll();
+            if (job == null)
+                job = steal();
+            return job;
+        }
+
+        private Job steal() {
+            final var victims = workers.toArray(new Worker[0]);
+            if (victims.length == 0)
+                return null;
+
+            final var start = ThreadLocalRandom.current().nextInt(victims.length);
+            for (int i = 0; i < victims.length; ++i) {
+                final var victim = victims[(start + i) % victims.length];
+                if (victim != this) {
+                    // the oldest job, so that a job just handed back to its last worker stays with it.
+                    final var job = victim.deque.pollFirst();
+                    if (job != null)
+                        return job;
+                }
+            }
+            return null;
+        }
+
+        private boolean hasWork() {
+            if (!injected.isEmpty())
+                return true;
+            for (final var worker : workers) {
+                if (!worker.deque.isEmpty())
+                    return true;
+            }
+            return false;
+        }
+
+        // moves this worker's jobs to the shared queue
+        private void giveBack() {
+            Job job;
+            boolean gaveBack = false;
+            while ((job = deque.pollFirst()) != null) {
+                injected.add(job);
+                gaveBack = true;
+            }
+            if (gaveBack)
+                wakeOne(this);
+        }
+
+        private void idle() throws InterruptedException {
+            parked = true;
+            // check again now that submitters can see that this worker is parked.
+            if (!group.shouldStop() && !(isActive() && hasWork()))
+                LockSupport.park(this);
+            parked = false;
+
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+
+    private static final VarHandle PARKED;
+
+    static {
+        try {
+            PARKED = MethodHandles.lookup().findVarHandle(Worker.class, "parked", boolean.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
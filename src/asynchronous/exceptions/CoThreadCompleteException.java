@@ -6,7 +6,7 @@ package asynchronous.exceptions;
 public class CoThreadCompleteException extends Exception {
 	private static final long serialVersionUID = 1L;
 
-	CoThreadCompleteException(){
+	public CoThreadCompleteException(){
 		super();
 	}
 }
@@ -0,0 +1,152 @@
+package asynchronous.futures;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A variable with a value per async context rather than per thread, for request ids, deadlines, tracing spans and the
+ * like. A context is an immutable snapshot of every AsyncLocal's value:
+ * <ul>
+ * <li>A call to an async function captures the caller's context when it's called and runs its whole body in it, across
+ * every await.</li>
+ * <li>A promise callback (then, onError, etc.) captures the context it's added in and runs in it, whatever thread
+ * settles the promise.</li>
+ * <li>Await.func runs its function in the caller's context.</li>
+ * </ul>
+ * get is an array lookup. set makes a new snapshot for the current thread, so it's only seen by code that captures the
+ * context after it, never by calls or callbacks that captured it before. Nothing is copied or locked when an async call
+ * suspends or resumes.
+ *
+ * @param <T> The type of the value.
+ */
+public final class AsyncLocal<T> {
+    private static final AtomicInteger nextIndex = new AtomicInteger(0);
+    private static final ThreadLocal<Context> current = new ThreadLocal<>();
+    // whether an AsyncLocal has ever been made. Until then there's nothing to capture, which keeps promise callbacks as
+    // cheap as they were.
+    private static volatile boolean inUse = false;
+
+    private final int index = nextIndex.getAndIncrement();
+
+    public AsyncLocal() {
+        inUse = true;
+    }
+
+    /**
+     * @return The value in the current context, or null if it hasn't been set.
+     */
+    @SuppressWarnings("unchecked")
+    public T get() {
+        final var context = current.get();
+        if (context == null || index >= context.values.length)
+            return null;
+        return (T) context.values[index];
+    }
+
+    /**
+     * Sets the value for the rest of the current context: the code running now and whatever captures the context
+     * after this.
+     */
+    public void set(T value) {
+        final var context = current.get();
+        final var values = context == null
+                ? new Object[index + 1]
+                : Arrays.copyOf(context.values, Math.max(index + 1, context.values.length));
+        values[index] = value;
+        current.set(new Context(values));
+    }
+
+    /**
+     * Sets the value back to null.
+     */
+    public void remove() {
+        set(null);
+    }
+
+    /**
+     * Runs the function with the value set, then puts the context back the way it was.
+     */
+    public <R> R with(T value, Supplier<R> func) {
+        final var previous = current.get();
+        try {
+            set(value);
+            return func.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * An immutable snapshot of the values of every AsyncLocal.
+     */
+    public static final class Context {
+        private static final Context EMPTY = new Context(new Object[0]);
+
+        private final Object[] values;
+
+        private Context(Object[] values) {
+            this.values = values;
+        }
+
+        /**
+         * @return The current thread's context. null if no AsyncLocal has been made yet, which run treats as the empty
+         * context.
+         */
+        public static Context capture() {
+            if (!inUse)
+                return null;
+            final var context = current.get();
+            return context != null ? context : EMPTY;
+        }
+
+        /**
+         * Runs the function in the given context (as returned by capture), then puts the thread's own context back.
+         */
+        public static void run(Context context, Runnable func) {
+            if (context == null) {
+                func.run();
+                return;
+            }
+
+            final var previous = enter(context);
+            try {
+                func.run();
+            } finally {
+                restore(previous);
+            }
+        }
+
+        public static <R> R call(Context context, Supplier<R> func) {
+            if (context == null)
+                return func.get();
+
+            final var previous = enter(context);
+            try {
+                return func.get();
+            } finally {
+                restore(previous);
+            }
+        }
+    }
+
+    /**
+     * Makes the context current. The empty context is stored as null so that threads without a context don't hold on
+     * to anything.
+     *
+     * @return The context that was current, for restore.
+     */
+    static Context enter(Context context) {
+        final var previous = current.get();
+        if (context != previous)
+            current.set(context == Context.EMPTY ? null : context);
+        return previous;
+    }
+
+    static void restore(Context previous) {
+        if (previous != null)
+            current.set(previous);
+        else
+            current.remove();
+    }
+}
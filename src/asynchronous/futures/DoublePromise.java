@@ -0,0 +1,164 @@
+package asynchronous.futures;
+
+import functionPlus.DoubleToDoubleFunction;
+
+import java.util.function.DoubleConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A promise of a double. The result is kept unboxed: resolveDouble, getDouble and the Double callbacks (thenDouble,
+ * thenAcceptDouble) never box it, so a chain of them doesn't allocate a box per stage. It's only boxed when it's asked
+ * for as a Double, through getResult, get, or the callbacks inherited from Promise.
+ * <p>
+ * A DoublePromise is a Promise&lt;Double&gt;, so it can be used wherever one is expected. from turns any
+ * Promise&lt;Double&gt; into a DoublePromise.
+ */
+public class DoublePromise extends PrimitivePromise<Double> {
+    // published by the volatile write to state, like the result of any other promise.
+    private double value = 0;
+
+    public DoublePromise(Consumer<DoubleSettle> initializer) {
+        initializer.accept(new DoubleSettle());
+    }
+
+    DoublePromise() {
+    }
+
+    /**
+     * @return The result of the promise, or 0 if it hasn't been fulfilled.
+     */
+    public double getDouble() {
+        return isFulfilled() ? value : 0;
+    }
+
+    @Override
+    Double storedResult() {
+        return value;
+    }
+
+    @Override
+    void store(Double result) {
+        value = result;
+    }
+
+    boolean resolveDouble(double result) {
+        if (!claim()) return false;
+
+        value = result;
+        complete(FULFILLED, null, null);
+        return true;
+    }
+
+    // ================ double callbacks =======================
+
+    /**
+     * Like thenApply, but the result stays unboxed on both sides.
+     *
+     * @return Promise resolved with what then returns, or rejected with what it throws. Rejection and cancellation are
+     * passed on unchanged.
+     */
+    public DoublePromise thenDouble(DoubleToDoubleFunction then) {
+        final var next = new DoubleThen(then, null);
+        addCallback(next);
+        return next;
+    }
+
+    /**
+     * Like thenAccept, but the result stays unboxed.
+     *
+     * @return Promise settled the same way as this one once then has run, or rejected with what it throws.
+     */
+    public DoublePromise thenAcceptDouble(DoubleConsumer then) {
+        final var next = new DoubleThen(null, then);
+        addCallback(next);
+        return next;
+    }
+
+    // ================ conversion =======================
+
+    /**
+     * Converts the given promise to a DoublePromise. A DoublePromise is returned as is; any other promise is followed by a
+     * new one, which unboxes the result once. A null result becomes 0.
+     */
+    public static DoublePromise from(Promise<Double> promise) {
+        if (promise instanceof DoublePromise primitive)
+            return primitive;
+
+        final var next = new DoubleThen(null, null);
+        promise.addCallback(next);
+        return next;
+    }
+
+    /**
+     * Constructs a promise that is already resolved with the given result.
+     */
+    public static DoublePromise resolvedDouble(double result) {
+        final var promise = new DoublePromise();
+        promise.resolveDouble(result);
+        return promise;
+    }
+
+    /**
+     * Settle that can also resolve the promise without boxing.
+     */
+    public class DoubleSettle extends Settle {
+        /**
+         * Resolve the promise with the given result. Only takes effect if the
+         * Promise hasn't been settled yet. If it has, the call will be ignored.
+         *
+         * @return Whether the call takes effect. If false: the call was ignored.
+         */
+        public boolean resolveDouble(double result) {
+            return DoublePromise.this.resolveDouble(result);
+        }
+
+        DoubleSettle() {
+        }
+    }
+
+    // what thenDouble returns. It's handed the result unboxed by a DoublePromise, and boxed by any other promise (see from). A
+    // null then passes the result on unchanged.
+    private static final class DoubleThen extends DoublePromise implements Stage<Double, DoublePromise> {
+        private final DoubleToDoubleFunction then;
+        private final DoubleConsumer accept;
+        private final AsyncLocal.Context context = AsyncLocal.Context.capture();
+
+        DoubleThen(DoubleToDoubleFunction then, DoubleConsumer accept) {
+            this.then = then;
+            this.accept = accept;
+        }
+
+        @Override
+        public AsyncLocal.Context context() {
+            return context;
+        }
+
+        void applyResolveDouble(double result) {
+            final double mapped;
+            try {
+                if (accept != null)
+                    accept.accept(result);
+                mapped = then != null ? then.apply(result) : result;
+            } catch (Throwable e) {
+                reject(e);
+                return;
+            }
+            resolveDouble(mapped);
+        }
+
+        @Override
+        public void applyResolveFrom(DoublePromise source) {
+            applyResolveDouble(source.value);
+        }
+
+        @Override
+        public void applyResolve(Double result) {
+            applyResolveDouble(result != null ? result : 0);
+        }
+
+        @Override
+        public DoubleThen promise() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package asynchronous.futures;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Converts foreign Futures into Promises without parking a thread on each one. CompletionStages (CompletableFuture
+ * included) are hooked with whenComplete and PromiseFutureTasks settle their own promise from done(). Everything else
+ * (plain FutureTasks, ForkJoinTasks, third-party futures) has no completion hook, so it is handed to a single shared
+ * poller thread that checks all of its futures with isDone in batches. The poller backs off when nothing is completing
+ * and speeds up again when something does or a new future arrives.
+ */
+public class FutureAdapter {
+    private static volatile long minPollNanos = TimeUnit.MICROSECONDS.toNanos(50);
+    private static volatile long maxPollNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    // the most threads the poller settles completed futures on at once
+    private static final int SETTLER_LIMIT = 16;
+
+    private FutureAdapter() {
+    }
+
+    /**
+     * Sets how often the poller checks its futures. It starts at min after finding a completed future or receiving a
+     * new one and doubles after each pass that finds nothing, up to max.
+     */
+    public static void setPollInterval(Duration min, Duration max) {
+        if (min.isNegative() || min.compareTo(max) > 0)
+            throw new IllegalArgumentException("min must be non-negative and no greater than max.");
+
+        minPollNanos = min.toNanos();
+        maxPollNanos = max.toNanos();
+    }
+
+    /**
+     * @return The number of futures waiting on the poller.
+     */
+    public static int getPolledCount() {
+        return Poller.INSTANCE.count;
+    }
+
+    /**
+     * Converts the given future to a promise. Use Promise.fromFuture instead, which also handles Promises, Tasks and
+     * Deferreds.
+     */
+    static <T> Promise<T> adapt(Future<T> future) {
+        if (future instanceof PromiseFutureTask<T> task)
+            return task.promise();
+
+        final var promise = new Promise<T>();
+        final var settle = promise.new Settle();
+
+        if (future instanceof CompletionStage<?>) {
+            @SuppressWarnings("unchecked") final var stage = (CompletionStage<T>) future;
+            stage.whenComplete((result, error) -> {
+                if (error == null)
+                    settle.resolve(result);
+                else if (future.isCancelled() || error instanceof CancellationException)
+                    settle.cancel();
+                else if (error instanceof CompletionException && error.getCause() != null)
+                    settle.reject(error.getCause());
+                else
+                    settle.reject(error);
+            });
+        } else if (future.isDone()) {
+            settleFrom(future, settle);
+        } else {
+            Poller.INSTANCE.add(future, settle);
+        }
+
+        return promise;
+    }
+
+    /**
+     * Settles the promise the same way as the future. The future must be done. Never throws: whatever the future
+     * throws rejects the promise.
+     */
+    static <T> void settleFrom(Future<T> future, Promise<T>.Settle settle) {
+        try {
+            if (future.isCancelled()) {
+                settle.cancel();
+                return;
+            }
+
+            settle.resolve(future.get());
+        } catch (ExecutionException e) {
+            settle.reject(e.getCause() != null ? e.getCause() : e);
+        } catch (CancellationException e) {
+            settle.cancel();
+        } catch (Throwable e) {
+            settle.reject(e);
+        }
+    }
+
+    // a future waiting on the poller
+    private static final class Entry<T> {
+        final Future<T> future;
+        final Promise<T>.Settle settle;
+
+        Entry(Future<T> future, Promise<T>.Settle settle) {
+            this.future = future;
+            this.settle = settle;
+        }
+
+        void settle() {
+            settleFrom(future, settle);
+        }
+    }
+
+    /**
+     * The shared poller. Only its own thread touches the entries list; new futures come in through a queue.
+     */
+    private static final class Poller implements Runnable {
+        static final Poller INSTANCE = new Poller();
+
+        private final ConcurrentLinkedQueue<Entry<?>> incoming = new ConcurrentLinkedQueue<>();
+        private final ArrayList<Entry<?>> entries = new ArrayList<>();
+        private final Executor settlers = PromiseExecutors.elasticPool(SETTLER_LIMIT);
+        private volatile Thread thread = null;
+        private volatile int count = 0;
+
+        <T> void add(Future<T> future, Promise<T>.Settle settle) {
+            incoming.add(new Entry<>(future, settle));
+
+            final var thread = this.thread;
+            if (thread == null || !thread.isAlive())
+                start(thread);
+            else
+                LockSupport.unpark(thread);
+        }
+
+        // starts a poller thread unless one other than dead has been started already
+        private synchronized void start(Thread dead) {
+            if (thread != dead)
+                return;
+
+            final var started = new Thread(this, "promise-future-poller");
+            started.setDaemon(true);
+            thread = started;
+            started.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                poll();
+            } finally {
+                // only reached if the poller died of something unexpected (an Error). Hand its futures to a new one.
+                final var dead = Thread.currentThread();
+                incoming.addAll(entries);
+                entries.clear();
+                if (!incoming.isEmpty())
+                    start(dead);
+            }
+        }
+
+        // settling runs the promise's callbacks on the spot, so it's done on the settlers: a slow callback mustn't hold
+        // up polling. They're a pool of their own rather than the default executor, which may start a thread each time.
+        private void settleOffPoller(Runnable settling) {
+            try {
+                settlers.execute(settling);
+            } catch (RejectedExecutionException e) {
+                settling.run();
+            }
+        }
+
+        private void poll() {
+            long pollNanos = minPollNanos;
+
+            while (true) {
+                boolean active = false;
+
+                Entry<?> entry;
+                while ((entry = incoming.poll()) != null) {
+                    entries.add(entry);
+                    active = true;
+                }
+
+                // remove the completed entries, swapping the last entry into their place
+                ArrayList<Entry<?>> completed = null;
+                for (int i = 0; i < entries.size(); ) {
+                    final var current = entries.get(i);
+                    try {
+                        if (!current.future.isDone()) {
+                            ++i;
+                            continue;
+                        }
+                        if (completed == null)
+                            completed = new ArrayList<>();
+                        completed.add(current);
+                    } catch (Throwable e) {
+                        // a broken future mustn't take the poller down with it. Its promise is rejected with the error
+                        // and it isn't polled again.
+                        settleOffPoller(() -> current.settle.reject(e));
+                    }
+
+                    final var last = entries.remove(entries.size() - 1);
+                    if (i < entries.size())
+                        entries.set(i, last);
+                }
+                count = entries.size();
+
+                if (completed != null) {
+                    active = true;
+                    final var batch = completed;
+                    settleOffPoller(() -> batch.forEach(Entry::settle));
+                }
+
+                pollNanos = active ? minPollNanos : Math.min(pollNanos * 2, maxPollNanos);
+
+                if (entries.isEmpty())
+                    LockSupport.park(this);
+                else if (pollNanos > 0)
+                    LockSupport.parkNanos(this, pollNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package asynchronous.futures;
+
+import functionPlus.IntToIntFunction;
+
+import java.util.function.IntConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A promise of an int. The result is kept unboxed: resolveInt, getInt and the Int callbacks (thenInt,
+ * thenAcceptInt) never box it, so a chain of them doesn't allocate a box per stage. It's only boxed when it's asked
+ * for as an Integer, through getResult, get, or the callbacks inherited from Promise.
+ * <p>
+ * An IntPromise is a Promise&lt;Integer&gt;, so it can be used wherever one is expected. from turns any
+ * Promise&lt;Integer&gt; into an IntPromise.
+ */
+public class IntPromise extends PrimitivePromise<Integer> {
+    // published by the volatile write to state, like the result of any other promise.
+    private int value = 0;
+
+    public IntPromise(Consumer<IntSettle> initializer) {
+        initializer.accept(new IntSettle());
+    }
+
+    IntPromise() {
+    }
+
+    /**
+     * @return The result of the promise, or 0 if it hasn't been fulfilled.
+     */
+    public int getInt() {
+        return isFulfilled() ? value : 0;
+    }
+
+    @Override
+    Integer storedResult() {
+        return value;
+    }
+
+    @Override
+    void store(Integer result) {
+        value = result;
+    }
+
+    boolean resolveInt(int result) {
+        if (!claim()) return false;
+
+        value = result;
+        complete(FULFILLED, null, null);
+        return true;
+    }
+
+    // ================ int callbacks =======================
+
+    /**
+     * Like thenApply, but the result stays unboxed on both sides.
+     *
+     * @return Promise resolved with what then returns, or rejected with what it throws. Rejection and cancellation are
+     * passed on unchanged.
+     */
+    public IntPromise thenInt(IntToIntFunction then) {
+        final var next = new IntThen(then, null);
+        addCallback(next);
+        return next;
+    }
+
+    /**
+     * Like thenAccept, but the result stays unboxed.
+     *
+     * @return Promise settled the same way as this one once then has run, or rejected with what it throws.
+     */
+    public IntPromise thenAcceptInt(IntConsumer then) {
+        final var next = new IntThen(null, then);
+        addCallback(next);
+        return next;
+    }
+
+    // ================ conversion =======================
+
+    /**
+     * Converts the given promise to an IntPromise. An IntPromise is returned as is; any other promise is followed by a
+     * new one, which unboxes the result once. A null result becomes 0.
+     */
+    public static IntPromise from(Promise<Integer> promise) {
+        if (promise instanceof IntPromise primitive)
+            return primitive;
+
+        final var next = new IntThen(null, null);
+        promise.addCallback(next);
+        return next;
+    }
+
+    /**
+     * Constructs a promise that is already resolved with the given result.
+     */
+    public static IntPromise resolvedInt(int result) {
+        final var promise = new IntPromise();
+        promise.resolveInt(result);
+        return promise;
+    }
+
+    /**
+     * Settle that can also resolve the promise without boxing.
+     */
+    public class IntSettle extends Settle {
+        /**
+         * Resolve the promise with the given result. Only takes effect if the
+         * Promise hasn't been settled yet. If it has, the call will be ignored.
+         *
+         * @return Whether the call takes effect. If false: the call was ignored.
+         */
+        public boolean resolveInt(int result) {
+            return IntPromise.this.resolveInt(result);
+        }
+
+        IntSettle() {
+        }
+    }
+
+    // what thenInt returns. It's handed the result unboxed by an IntPromise, and boxed by any other promise (see from). A
+    // null then passes the result on unchanged.
+    private static final class IntThen extends IntPromise implements Stage<Integer, IntPromise> {
+        private final IntToIntFunction then;
+        private final IntConsumer accept;
+        private final AsyncLocal.Context context = AsyncLocal.Context.capture();
+
+        IntThen(IntToIntFunction then, IntConsumer accept) {
+            this.then = then;
+            this.accept = accept;
+        }
+
+        @Override
+        public AsyncLocal.Context context() {
+            return context;
+        }
+
+        void applyResolveInt(int result) {
+            final int mapped;
+            try {
+                if (accept != null)
+                    accept.accept(result);
+                mapped = then != null ? then.apply(result) : result;
+            } catch (Throwable e) {
+                reject(e);
+                return;
+            }
+            resolveInt(mapped);
+        }
+
+        @Override
+        public void applyResolveFrom(IntPromise source) {
+            applyResolveInt(source.value);
+        }
+
+        @Override
+        public void applyResolve(Integer result) {
+            applyResolveInt(result != null ? result : 0);
+        }
+
+        @Override
+        public IntThen promise() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package asynchronous.futures;
+
+import functionPlus.LongToLongFunction;
+
+import java.util.function.LongConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A promise of a long. The result is kept unboxed: resolveLong, getLong and the Long callbacks (thenLong,
+ * thenAcceptLong) never box it, so a chain of them doesn't allocate a box per stage. It's only boxed when it's asked
+ * for as a Long, through getResult, get, or the callbacks inherited from Promise.
+ * <p>
+ * A LongPromise is a Promise&lt;Long&gt;, so it can be used wherever one is expected. from turns any
+ * Promise&lt;Long&gt; into a LongPromise.
+ */
+public class LongPromise extends PrimitivePromise<Long> {
+    // published by the volatile write to state, like the result of any other promise.
+    private long value = 0;
+
+    public LongPromise(Consumer<LongSettle> initializer) {
+        initializer.accept(new LongSettle());
+    }
+
+    LongPromise() {
+    }
+
+    /**
+     * @return The result of the promise, or 0 if it hasn't been fulfilled.
+     */
+    public long getLong() {
+        return isFulfilled() ? value : 0;
+    }
+
+    @Override
+    Long storedResult() {
+        return value;
+    }
+
+    @Override
+    void store(Long result) {
+        value = result;
+    }
+
+    boolean resolveLong(long result) {
+        if (!claim()) return false;
+
+        value = result;
+        complete(FULFILLED, null, null);
+        return true;
+    }
+
+    // ================ long callbacks =======================
+
+    /**
+     * Like thenApply, but the result stays unboxed on both sides.
+     *
+     * @return Promise resolved with what then returns, or rejected with what it throws. Rejection and cancellation are
+     * passed on unchanged.
+     */
+    public LongPromise thenLong(LongToLongFunction then) {
+        final var next = new LongThen(then, null);
+        addCallback(next);
+        return next;
+    }
+
+    /**
+     * Like thenAccept, but the result stays unboxed.
+     *
+     * @return Promise settled the same way as this one once then has run, or rejected with what it throws.
+     */
+    public LongPromise thenAcceptLong(LongConsumer then) {
+        final var next = new LongThen(null, then);
+        addCallback(next);
+        return next;
+    }
+
+    // ================ conversion =======================
+
+    /**
+     * Converts the given promise to a LongPromise. A LongPromise is returned as is; any other promise is followed by a
+     * new one, which unboxes the result once. A null result becomes 0.
+     */
+    public static LongPromise from(Promise<Long> promise) {
+        if (promise instanceof LongPromise primitive)
+            return primitive;
+
+        final var next = new LongThen(null, null);
+        promise.addCallback(next);
+        return next;
+    }
+
+    /**
+     * Constructs a promise that is already resolved with the given result.
+     */
+    public static LongPromise resolvedLong(long result) {
+        final var promise = new LongPromise();
+        promise.resolveLong(result);
+        return promise;
+    }
+
+    /**
+     * Settle that can also resolve the promise without boxing.
+     */
+    public class LongSettle extends Settle {
+        /**
+         * Resolve the promise with the given result. Only takes effect if the
+         * Promise hasn't been settled yet. If it has, the call will be ignored.
+         *
+         * @return Whether the call takes effect. If false: the call was ignored.
+         */
+        public boolean resolveLong(long result) {
+            return LongPromise.this.resolveLong(result);
+        }
+
+        LongSettle() {
+        }
+    }
+
+    // what thenLong returns. It's handed the result unboxed by a LongPromise, and boxed by any other promise (see from). A
+    // null then passes the result on unchanged.
+    private static final class LongThen extends LongPromise implements Stage<Long, LongPromise> {
+        private final LongToLongFunction then;
+        private final LongConsumer accept;
+        private final AsyncLocal.Context context = AsyncLocal.Context.capture();
+
+        LongThen(LongToLongFunction then, LongConsumer accept) {
+            this.then = then;
+            this.accept = accept;
+        }
+
+        @Override
+        public AsyncLocal.Context context() {
+            return context;
+        }
+
+        void applyResolveLong(long result) {
+            final long mapped;
+            try {
+                if (accept != null)
+                    accept.accept(result);
+                mapped = then != null ? then.apply(result) : result;
+            } catch (Throwable e) {
+                reject(e);
+                return;
+            }
+            resolveLong(mapped);
+        }
+
+        @Override
+        public void applyResolveFrom(LongPromise source) {
+            applyResolveLong(source.value);
+        }
+
+        @Override
+        public void applyResolve(Long result) {
+            applyResolveLong(result != null ? result : 0);
+        }
+
+        @Override
+        public LongThen promise() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package asynchronous.futures;
+
+/**
+ * What IntPromise, LongPromise and DoublePromise share. The subclass keeps the result unboxed in a field of its own;
+ * this unboxes a result that's given boxed, and hands the result to the subclass's own stages (thenInt etc.) without
+ * boxing it.
+ *
+ * @param <T> The boxed type of the result.
+ */
+abstract class PrimitivePromise<T> extends Promise<T> {
+    PrimitivePromise() {
+    }
+
+    /**
+     * Stores the result unboxed. Never given null.
+     */
+    abstract void store(T result);
+
+    @Override
+    void complete(int finalState, T result, Throwable error) {
+        // a boxed result is unboxed here, so resolving with null gives 0.
+        if (result != null)
+            store(result);
+        super.complete(finalState, null, error);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    void runCallback(Callback<T, ?> callback) {
+        if (callback instanceof Stage<?, ?> stage && isFulfilled())
+            ((Stage<T, PrimitivePromise<T>>) stage).applyResolveFrom(this);
+        else
+            super.runCallback(callback);
+    }
+
+    /**
+     * What thenInt etc. return: a promise that is also the callback that settles it, which saves an allocation per
+     * stage. Rejection and cancellation are passed on unchanged.
+     *
+     * @param <T> The boxed type of the result.
+     * @param <P> The promise type whose result the stage can take unboxed.
+     */
+    interface Stage<T, P extends PrimitivePromise<T>> extends Callback<T, T> {
+        /**
+         * Runs the stage with the result of source, which is fulfilled, without boxing it.
+         */
+        void applyResolveFrom(P source);
+
+        @Override
+        default void applyReject(Throwable error) {
+            promise().reject(error);
+        }
+
+        @Override
+        default void applyCancel() {
+            promise().cancel();
+        }
+    }
+}
@@ -1,12 +1,16 @@
 package asynchronous.futures;
 
 import asynchronous.futures.exceptions.PromiseCancellationException;
+import functionPlus.DualResult;
 import functionPlus.Result;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.time.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.*;
 
 
@@ -14,14 +18,36 @@ import java.util.function.*;
  * Total rip-off of javascript's promise, but wait, this one has a cancel state to make things more complicated.
  */
 public class Promise<T> implements Future<T> {
-    private volatile T result = null;
-    private volatile Throwable error = null;
-    // flags for the 3 possible final states of the promise
-    private volatile boolean fulfilled = false;
-    private volatile boolean rejected = false;
-    private volatile boolean cancelled = false;
-    private final Object awaitLock = new Object();
-    private final Queue<Callback<T, ?>> callbacks = new ConcurrentLinkedQueue<>();
+    // possible values of state. COMPLETING is a short-lived intermediate state used while the result is written.
+    static final int PENDING = 0;
+    static final int COMPLETING = 1;
+    static final int FULFILLED = 2;
+    static final int REJECTED = 3;
+    static final int CANCELLED = 4;
+
+    private static final VarHandle STATE;
+    private static final VarHandle WAITERS;
+    private static final VarHandle CALLBACKS;
+
+    static {
+        try {
+            final var lookup = MethodHandles.lookup();
+            STATE = lookup.findVarHandle(Promise.class, "state", int.class);
+            WAITERS = lookup.findVarHandle(Promise.class, "waiters", Waiter.class);
+            CALLBACKS = lookup.findVarHandle(Promise.class, "callbacks", Object.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // result and error are published by the volatile write to state.
+    private T result = null;
+    private Throwable error = null;
+    private volatile int state = PENDING;
+    // threads blocked in an await method
+    private volatile Waiter waiters = null;
+    // null, a single Callback, or a CallbackNode stack (newest first) once there's more than one.
+    private volatile Object callbacks = null;
 
     public Promise(Consumer<Settle> initializer) {
         initializer.accept(new Settle());
@@ -36,7 +62,7 @@ public class Promise<T> implements Future<T> {
      * Whether the Promise has been fulfilled, rejected, or cancelled
      */
     public boolean isSettled() {
-        return fulfilled || rejected || cancelled;
+        return state > COMPLETING;
     }
 
     /**
@@ -50,14 +76,14 @@ public class Promise<T> implements Future<T> {
      * Whether the Promise has been fulfilled
      */
     public boolean isFulfilled() {
-        return fulfilled;
+        return state == FULFILLED;
     }
 
     /**
      * Whether the Promise has been rejected
      */
     public boolean isRejected() {
-        return rejected;
+        return state == REJECTED;
     }
 
     /**
@@ -65,7 +91,7 @@ public class Promise<T> implements Future<T> {
      */
     @Override
     public boolean isCancelled() {
-        return cancelled;
+        return state == CANCELLED;
     }
 
     /**
@@ -73,6 +99,14 @@ public class Promise<T> implements Future<T> {
      * to be fulfilled (or if the result was actually null).
      */
     public T getResult() {
+        return state == FULFILLED ? storedResult() : null;
+    }
+
+    /**
+     * The result as stored. Overridden by the primitive promises (IntPromise, etc.), which keep it unboxed and only box
+     * it when it's asked for as an object.
+     */
+    T storedResult() {
         return result;
     }
 
@@ -82,126 +116,83 @@ public class Promise<T> implements Future<T> {
      * value null).
      */
     public Throwable getError() {
-        return error;
+        return state == REJECTED ? error : null;
     }
 
-    // sideNote: every mutating method in this class is synchronized so that it doesn't break and stuff
+    // sideNote: settling is lock-free. Whoever moves state from PENDING to COMPLETING owns the settlement,
+    // writes the result or error, then publishes the final state.
 
-
-    // handle's the event that the promise is resolved
-    private synchronized void handleResolve(T result) {
-        // apply state and result
-        fulfilled = true;
-        this.result = result;
-
-        // call the callbacks with the new result
-        resolveCallbacks(result);
-
-        synchronized (awaitLock) {
-            // notify any waiting threads (in the await method)
-            awaitLock.notifyAll();
-        }
+    /**
+     * Claims the right to settle the promise.
+     *
+     * @return Whether the caller now owns the settlement.
+     */
+    boolean claim() {
+        return state == PENDING && STATE.compareAndSet(this, PENDING, COMPLETING);
     }
 
-    // handle's the event that the promise is rejected
-    private synchronized void handleReject(Throwable error) {
-        // apply state and result
-        rejected = true;
+    /**
+     * Publishes the final state and notifies callbacks and waiting threads. Only called by the owner of a claim. The
+     * primitive promises override this to unbox the result.
+     */
+    void complete(int finalState, T result, Throwable error) {
+        this.result = result;
         this.error = error;
+        state = finalState;
 
-        // reject the callbacks with the new error
-        rejectCallbacks(error);
-
-        synchronized (awaitLock) {
-            // notify any waiting threads (in the await method)
-            awaitLock.notifyAll();
-        }
-    }
-
-    // handle's the event that the promise is cancelled
-    private synchronized void handleCancel() {
-        //apply state
-        cancelled = true;
-
-        // cancel the callbacks
-        cancelCallbacks();
+        // call the callbacks with the outcome
+        trySettleCallbacks();
 
-        synchronized (awaitLock) {
-            awaitLock.notifyAll();
-        }
+        // wake any waiting threads (in the await methods)
+        wakeWaiters();
     }
 
     private boolean resolve(T result) {
-        if (isSettled()) return false;
+        if (!claim()) return false;
 
-        synchronized (this) {
-            if (isSettled()) {
-                return false;
-            } else {
-                handleResolve(result);
-                return true;
-            }
-        }
+        complete(FULFILLED, result, null);
+        return true;
     }
 
-    private boolean reject(Throwable error) {
-        if (isSettled()) return false;
+    boolean reject(Throwable error) {
+        if (!claim()) return false;
 
-        synchronized (this) {
-            if (isSettled()) {
-                return false;
-            } else {
-                handleReject(error);
-                return true;
-            }
-        }
+        complete(REJECTED, null, error);
+        return true;
     }
 
-    private boolean cancel() {
-        if (isSettled()) return false;
+    boolean cancel() {
+        if (!claim()) return false;
 
-        synchronized (this) {
-            if (isSettled()) {
-                return false;
-            } else {
-                handleCancel();
-                return true;
-            }
-        }
+        complete(CANCELLED, null, null);
+        return true;
     }
 
     private boolean resolveFrom(Supplier<T> resultGetter) {
-        if (isSettled()) return false;
-
-        synchronized (this) {
-            if (isSettled()) {
-                return false;
-            } else {
-                try {
-                    handleResolve(resultGetter.get());
-                } catch (Throwable e) {
-                    handleReject(e);
-                }
-                return true;
-            }
+        if (!claim()) return false;
+
+        final T result;
+        try {
+            result = resultGetter.get();
+        } catch (Throwable e) {
+            complete(REJECTED, null, e);
+            return true;
         }
+        complete(FULFILLED, result, null);
+        return true;
     }
 
     private boolean rejectFrom(Supplier<Throwable> errorGetter) {
-        if (isSettled()) return false;
+        if (!claim()) return false;
 
-        synchronized (this) {
-            if (isSettled()) {
-                return false;
-            } else {
-                try {
-                    handleReject(errorGetter.get());
-                } catch (Throwable e) {
-                    handleReject(e);
-                }
-                return true;
-            }
+        Throwable error;
+        try {
+            error = errorGetter.get();
+        } catch (Throwable e) {
+            error = e;
         }
+        complete(REJECTED, null, error);
+        return true;
     }
 
 
@@ -280,52 +271,223 @@ public class Promise<T> implements Future<T> {
     // callback stuff
 
     /**
-     * Resolve all callbacks with the given result
+     * Adds the callback to the store. The first callback is stored inline; a stack of nodes is only built once a second
+     * one is added.
      */
-    private synchronized void resolveCallbacks(T result) {
-        Callback<T, ?> callback;
-        while ((callback = callbacks.poll()) != null)
-            callback.applyResolve(result);
+    private void pushCallback(Callback<T, ?> callback) {
+        while (true) {
+            final var current = callbacks;
+            final Object updated;
+            if (current == null)
+                updated = callback;
+            else if (current instanceof CallbackNode node)
+                updated = new CallbackNode(callback, node);
+            else
+                updated = new CallbackNode(callback, new CallbackNode((Callback<?, ?>) current, null));
+
+            if (CALLBACKS.compareAndSet(this, current, updated))
+                return;
+        }
     }
 
     /**
-     * Reject all callbacks with the given error
+     * Empties the store.
+     *
+     * @return null, a single Callback, or a CallbackNode list in the order the callbacks were added.
      */
-    private synchronized void rejectCallbacks(Throwable error) {
-        Callback<T, ?> callback;
-        while ((callback = callbacks.poll()) != null)
-            callback.applyReject(error);
+    private Object takeCallbacks() {
+        if (callbacks == null)
+            return null;
+
+        final var taken = CALLBACKS.getAndSet(this, null);
+        if (!(taken instanceof CallbackNode node))
+            return taken;
+
+        // the stack is newest first. reverse it in place; nobody else can see these nodes anymore.
+        CallbackNode reversed = null;
+        CallbackNode next;
+        for (var current = node; current != null; current = next) {
+            next = current.next;
+            current.next = reversed;
+            reversed = current;
+        }
+        return reversed;
+    }
+
+    // link in the callback stack
+    private static final class CallbackNode {
+        final Callback<?, ?> callback;
+        CallbackNode next;
+
+        CallbackNode(Callback<?, ?> callback, CallbackNode next) {
+            this.callback = callback;
+            this.next = next;
+        }
     }
 
     /**
-     * Cancel all callbacks
+     * Runs the callback with the outcome of the promise. Must only be called once the promise is settled. The primitive
+     * promises override this to hand their own callbacks the result unboxed.
      */
-    private synchronized void cancelCallbacks() {
-        Callback<T, ?> callback;
-        while ((callback = callbacks.poll()) != null)
+    void runCallback(Callback<T, ?> callback) {
+        final var state = this.state;
+        if (state == FULFILLED)
+            callback.applyResolve(storedResult());
+        else if (state == REJECTED)
+            callback.applyReject(error);
+        else
             callback.applyCancel();
     }
 
+    /**
+     * Runs the callbacks in the store if the promise is settled.
+     *
+     * @return Whether the promise is settled.
+     */
     private boolean trySettleCallbacks() {
-        if (isFulfilled())
-            resolveCallbacks(result);
-        else if (isRejected())
-            rejectCallbacks(error);
-        else if (isCancelled())
-            cancelCallbacks();
-        else
+        if (!isSettled())
             return false;
 
+        if (callbacks != null)
+            Dispatcher.current().dispatch(this);
+
         return true;
     }
 
+    /**
+     * Runs callbacks for settled promises. Settling a promise runs its callbacks, which settle the promises returned by
+     * then, which run their callbacks, etc. Instead of recursing once per link in the chain, each thread keeps a stack of
+     * promises with callbacks to run and a single loop drains it. A promise settled by a callback is pushed on top, so
+     * callbacks run in exactly the order they would by recursion, but the call stack stays the same depth however long
+     * the chain is.
+     */
+    private static final class Dispatcher {
+        private static final ThreadLocal<Dispatcher> instances = ThreadLocal.withInitial(Dispatcher::new);
+
+        // parallel arrays: the promise and the callbacks (Callback or CallbackNode) it has left to run.
+        private Promise<?>[] promises = new Promise<?>[16];
+        private Object[] remaining = new Object[16];
+        private int size = 0;
+        // the size of the stack when the running callback started. Entries below it belong to callbacks further out.
+        private int base = 0;
+        private boolean draining = false;
+
+        static Dispatcher current() {
+            return instances.get();
+        }
+
+        void dispatch(Promise<?> promise) {
+            final var taken = promise.takeCallbacks();
+            if (taken == null)
+                return;
+
+            if (size == promises.length) {
+                promises = Arrays.copyOf(promises, size * 2);
+                remaining = Arrays.copyOf(remaining, size * 2);
+            }
+            promises[size] = promise;
+            remaining[size] = taken;
+            ++size;
+
+            // if this thread is already in the loop (we're inside a callback), the loop will get to it.
+            if (!draining)
+                drain();
+        }
+
+        /**
+         * Runs every callback on the stack down to floor. Entries below floor were pushed before the callback that's
+         * running now (further out) and are left to the loop that's draining them, so callbacks still run in the order
+         * recursion would run them.
+         * <p>
+         * A callback that throws doesn't stop the loop: the rest are still run and the first error is thrown once the
+         * stack is back down to floor.
+         */
+        @SuppressWarnings("unchecked")
+        private void drain(int floor) {
+            final var wasDraining = draining;
+            draining = true;
+            Throwable thrown = null;
+            try {
+                while (size > floor) {
+                    final var top = size - 1;
+                    final var promise = (Promise<Object>) promises[top];
+                    final var next = remaining[top];
+
+                    final Callback<Object, ?> callback;
+                    if (next instanceof CallbackNode node) {
+                        callback = (Callback<Object, ?>) node.callback;
+                        remaining[top] = node.next;
+                    } else {
+                        callback = (Callback<Object, ?>) next;
+                        remaining[top] = null;
+                    }
+
+                    if (remaining[top] == null) {
+                        promises[top] = null;
+                        --size;
+                    }
+
+                    // whatever the callback pushes goes above this. Anything below is further out.
+                    final var outerBase = base;
+                    base = size;
+                    try {
+                        run(promise, callback);
+                    } catch (Throwable e) {
+                        if (thrown == null)
+                            thrown = e;
+                    } finally {
+                        base = outerBase;
+                    }
+                }
+            } finally {
+                draining = wasDraining;
+            }
+
+            if (thrown instanceof RuntimeException e)
+                throw e;
+            if (thrown instanceof Error e)
+                throw e;
+        }
+
+        void drain() {
+            drain(0);
+        }
+
+        private static void run(Promise<Object> promise, Callback<Object, ?> callback) {
+            // a callback runs in the AsyncLocal context it was added in.
+            final var context = callback.context();
+            if (context == null) {
+                promise.runCallback(callback);
+                return;
+            }
+
+            final var previous = AsyncLocal.enter(context);
+            try {
+                promise.runCallback(callback);
+            } finally {
+                AsyncLocal.restore(previous);
+            }
+        }
+
+        /**
+         * Called before a thread blocks. If it's blocking inside a callback, the callbacks of promises that callback
+         * settled haven't run yet (recursion would have run them already) and the promise it's blocking on may be
+         * waiting for one of them, so run those first. Callbacks pushed before it are left alone to keep the order.
+         */
+        static void helpBeforeBlocking() {
+            final var dispatcher = instances.get();
+            if (dispatcher.draining && dispatcher.size > dispatcher.base)
+                dispatcher.drain(dispatcher.base);
+        }
+    }
+
     // ============================================== Callback takers ==========================================
     /**
      * Adds the callback to the promise, all callback methods (then, onError, onSettled) end up calling this one.
      */
-    private <R> Promise<R> addCallback(Callback<T, R> callback) {
-        // puts the callback in the queue
-        callbacks.add(callback);
+    <R> Promise<R> addCallback(Callback<T, R> callback) {
+        // puts the callback in the store
+        pushCallback(callback);
 
         // try to settle the callbacks, this will settle the callback added if the promise has already been fulfilled.
         trySettleCallbacks();
@@ -359,7 +521,7 @@ public class Promise<T> implements Future<T> {
     public Promise<T> thenRun(Runnable then, Runnable catcher, Runnable onCancel) {
         return addCallback(new SyncCallback<T>(t -> {
             then.run();
-            return result;
+            return t;
         }, e -> {
             catcher.run();
             return null;
@@ -751,59 +913,130 @@ public class Promise<T> implements Future<T> {
 
 
     // blocking wait
-    public T await(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
-        if (isPending() && timeout > 0) {
-            final var timedOut = new AtomicBoolean(false);
-
-            final var timerThread = new Thread(() -> {
-                try {
-                    if (unit.toMillis(timeout) < Long.MAX_VALUE / 1000)
-                        Thread.sleep(unit.toMillis(timeout), (int) (unit.toNanos(timeout) % 1000));
-                    else
-                        Thread.sleep(unit.toMillis(timeout));
-                } catch (InterruptedException ie) {
-                }
 
-                timedOut.set(true);
-                synchronized (awaitLock) {
-                    awaitLock.notifyAll();
-                }
-            });
+    /**
+     * Blocks until the promise is settled or the timeout runs out. Waiting threads park on the waiters stack and are
+     * unparked when the promise settles. Timed waits park with a deadline, so no timer is needed.
+     *
+     * @param timed Whether to give up after nanos nanoseconds.
+     * @return Whether the promise is settled.
+     */
+    private boolean waitForSettle(boolean timed, long nanos) throws InterruptedException {
+        if (isSettled()) return true;
 
+        final long deadline = timed ? System.nanoTime() + nanos : 0L;
+        Dispatcher.helpBeforeBlocking();
+        Waiter waiter = null;
+        boolean queued = false;
 
-            timerThread.start();
+        while (true) {
+            if (isSettled()) {
+                if (queued)
+                    removeWaiter(waiter);
+                return true;
+            } else if (Thread.interrupted()) {
+                removeWaiter(waiter);
+                throw new InterruptedException();
+            } else if (waiter == null) {
+                if (timed && nanos <= 0)
+                    return false;
+                waiter = new Waiter();
+            } else if (!queued) {
+                final var head = waiters;
+                waiter.next = head;
+                queued = WAITERS.compareAndSet(this, head, waiter);
+            } else if (timed) {
+                nanos = deadline - System.nanoTime();
+                if (nanos <= 0) {
+                    removeWaiter(waiter);
+                    return isSettled();
+                }
+                LockSupport.parkNanos(this, nanos);
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
 
-            synchronized (awaitLock) {
-                while (isPending() && !timedOut.get()) {
-                    awaitLock.wait();
+    /**
+     * Unlinks the given waiter (and any other abandoned waiters) from the waiters stack.
+     */
+    private void removeWaiter(Waiter waiter) {
+        if (waiter == null) return;
+        waiter.thread = null;
+
+        retry:
+        while (true) {
+            Waiter previous = null;
+            Waiter next;
+            for (var current = waiters; current != null; current = next) {
+                next = current.next;
+                if (current.thread != null) {
+                    previous = current;
+                } else if (previous != null) {
+                    previous.next = next;
+                    // previous was abandoned while we were unlinking, start over.
+                    if (previous.thread == null)
+                        continue retry;
+                } else if (!WAITERS.compareAndSet(this, current, next)) {
+                    continue retry;
                 }
             }
+            return;
+        }
+    }
 
-            timerThread.interrupt();
+    /**
+     * Wakes every waiting thread. Called once the promise is settled.
+     */
+    private void wakeWaiters() {
+        if (waiters == null) return;
+
+        for (var waiter = (Waiter) WAITERS.getAndSet(this, null); waiter != null; waiter = waiter.next) {
+            final var thread = waiter.thread;
+            if (thread != null) {
+                waiter.thread = null;
+                LockSupport.unpark(thread);
+            }
         }
+    }
 
+    // a thread blocked in one of the await methods.
+    private static final class Waiter {
+        volatile Thread thread = Thread.currentThread();
+        volatile Waiter next;
+    }
 
-        if (isRejected())
+    /**
+     * @return The result if fulfilled or null if pending.
+     * @throws ExecutionException        If rejected.
+     * @throws PromiseCancellationException If cancelled.
+     */
+    private T report() throws ExecutionException {
+        final var state = this.state;
+        if (state == REJECTED)
             throw new ExecutionException(error);
-        else if (isCancelled())
+        else if (state == CANCELLED)
             throw new PromiseCancellationException(this);
+        else if (state == FULFILLED)
+            return storedResult();
         else
-            return result;
+            return null;
     }
 
-    public T await() throws InterruptedException, ExecutionException {
-        synchronized (awaitLock) {
-            while (isPending()) {
-                awaitLock.wait();
-            }
-        }
+    /**
+     * Blocks until the promise is settled or the timeout runs out.
+     *
+     * @return The result of the promise or null if it timed out.
+     */
+    public T await(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException {
+        waitForSettle(true, unit.toNanos(timeout));
+        return report();
+    }
 
-        if (isRejected())
-            throw new ExecutionException(error);
-        else if (isCancelled())
-            throw new PromiseCancellationException(this);
-        else
-            return result;
+    public T await() throws InterruptedException, ExecutionException {
+        waitForSettle(false, 0L);
+        return report();
     }
 
     public T await(Duration timeout) throws InterruptedException, ExecutionException {
@@ -814,11 +1047,7 @@ public class Promise<T> implements Future<T> {
     }
 
     public Result<T> awaitResult() throws InterruptedException, ExecutionException {
-        synchronized (awaitLock) {
-            while (isPending()) {
-                awaitLock.wait();
-            }
-        }
+        waitForSettle(false, 0L);
 
         if (isFulfilled()) {
             return new Result<>(getResult());
@@ -852,47 +1081,125 @@ public class Promise<T> implements Future<T> {
 
     @Override
     public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        return await(timeout, unit);
+        if (!waitForSettle(true, unit.toNanos(timeout)))
+            throw new TimeoutException();
+        return report();
     }
 
     // ======================== Factory functions ========================
+
+    /**
+     * A promise and a handle on whatever thread runs the function that settles it. The function may be run by a pooled
+     * or virtual thread, so there isn't necessarily a dedicated Thread; interrupt() only ever reaches the thread while
+     * it is running the function.
+     */
     public static class PromiseAndThread<T> {
         public final Promise<T> promise;
+        /**
+         * The thread started for the function. Only set with PromiseExecutors.threadPerTask() (the default), which
+         * gives every function a thread of its own; null with any other executor.
+         *
+         * @deprecated Other executors reuse threads, so use getThread and interrupt, which work with any executor.
+         */
+        @Deprecated
         public final Thread thread;
+        private final Runnable body;
+        // the thread currently running the function. null before it starts and after it finishes.
+        private Thread running = null;
 
-        private PromiseAndThread(Promise<T> promise, Thread thread) {
+        private PromiseAndThread(Promise<T> promise, Executor executor, Runnable func) {
             this.promise = promise;
-            this.thread = thread;
+            this.body = () -> {
+                // the promise may have been settled (a cancelled task for instance) before the function got a thread.
+                if (promise.isPending())
+                    run(func);
+            };
+            this.thread = executor instanceof PromiseExecutors.ThreadPerTask threadPerTask ? threadPerTask.newThread(body) : null;
+        }
+
+        /**
+         * @return The thread running the function or null if the function hasn't started yet or has finished.
+         */
+        public synchronized Thread getThread() {
+            return running;
+        }
+
+        /**
+         * Interrupts the thread running the function if the function is running.
+         *
+         * @return Whether a thread was interrupted.
+         */
+        public synchronized boolean interrupt() {
+            if (running == null)
+                return false;
+
+            running.interrupt();
+            return true;
+        }
+
+        private void run(Runnable func) {
+            synchronized (this) {
+                running = Thread.currentThread();
+            }
+
+            try {
+                func.run();
+            } finally {
+                synchronized (this) {
+                    running = null;
+                }
+                // don't let an interrupt meant for the function leak into whatever the thread runs next.
+                Thread.interrupted();
+            }
+        }
+
+        private static <T> PromiseAndThread<T> start(Promise<T> promise, Executor executor, Runnable func) {
+            final var started = new PromiseAndThread<T>(promise, executor, func);
+            try {
+                if (started.thread != null)
+                    started.thread.start();
+                else
+                    executor.execute(started.body);
+            } catch (RejectedExecutionException e) {
+                promise.reject(e);
+            }
+            return started;
         }
     }
 
     /**
-     * Runs the given function in a new Thread.
+     * Runs the given function with the given executor.
      *
      * @return Resolves when function completes (with the output of the function) and rejects if the function throws an error.
      */
-    public static <T> PromiseAndThread<T> asyncGet(Supplier<T> func) {
+    public static <T> PromiseAndThread<T> asyncGet(Supplier<T> func, Executor executor) {
         final var promise = new Promise<T>();
-        final var thread = new Thread(() -> {
+        return PromiseAndThread.start(promise, executor, () -> {
             try {
                 promise.resolve(func.get());
             } catch (Throwable e) {
                 promise.reject(e);
             }
         });
-        thread.start();
+    }
 
-        return new PromiseAndThread<T>(promise, thread);
+    /**
+     * Runs the given function with the default executor (PromiseExecutors.getDefault()).
+     *
+     * @return Resolves when function completes (with the output of the function) and rejects if the function throws an error.
+     */
+    public static <T> PromiseAndThread<T> asyncGet(Supplier<T> func) {
+        return asyncGet(func, PromiseExecutors.getDefault());
     }
 
     /**
-     * Runs the given function in a new Thread.
+     * Runs the given function with the given executor.
      *
      * @return Resolves when function completes and rejects if the function throws an error.
      */
-    public static PromiseAndThread<Void> asyncRun(Runnable func) {
+    public static PromiseAndThread<Void> asyncRun(Runnable func, Executor executor) {
         final var promise = new Promise<Void>();
-        final var thread = new Thread(() -> {
+        return PromiseAndThread.start(promise, executor, () -> {
             try {
                 func.run();
                 promise.resolve(null);
@@ -900,28 +1207,38 @@ public class Promise<T> implements Future<T> {
                 promise.reject(e);
             }
         });
-        thread.start();
+    }
 
-        return new PromiseAndThread<Void>(promise, thread);
+    /**
+     * Runs the given function with the default executor (PromiseExecutors.getDefault()).
+     *
+     * @return Resolves when function completes and rejects if the function throws an error.
+     */
+    public static PromiseAndThread<Void> asyncRun(Runnable func) {
+        return asyncRun(func, PromiseExecutors.getDefault());
     }
 
 
     /**
-     * Constructs a new Promise by running the initializer in a new thread.
+     * Constructs a new Promise by running the initializer with the given executor.
      */
-    public static <T> PromiseAndThread<T> threadInit(Consumer<Promise<T>.Settle> initializer) {
+    public static <T> PromiseAndThread<T> threadInit(Consumer<Promise<T>.Settle> initializer, Executor executor) {
         final var promise = new Promise<T>();
         final var settle = promise.new Settle();
-        final var thread = new Thread(() -> {
+        return PromiseAndThread.start(promise, executor, () -> {
             try {
                 initializer.accept(settle);
             } catch (Throwable e) {
                 settle.reject(e);
             }
         });
-        thread.start();
+    }
 
-        return new PromiseAndThread<T>(promise, thread);
+    /**
+     * Constructs a new Promise by running the initializer with the default executor (PromiseExecutors.getDefault()).
+     */
+    public static <T> PromiseAndThread<T> threadInit(Consumer<Promise<T>.Settle> initializer) {
+        return threadInit(initializer, PromiseExecutors.getDefault());
     }
 
     /**
@@ -970,7 +1287,9 @@ public class Promise<T> implements Future<T> {
     }
 
     /**
-     * Converts the given Future to a Promise.
+     * Converts the given Future to a Promise. CompletionStages and PromiseFutureTasks are hooked directly, other
+     * futures are checked by a shared poller thread (see FutureAdapter). If the future fails with an
+     * ExecutionException, the promise is rejected with its cause.
      */
     public static <T> Promise<T> fromFuture(Future<T> future) {
         // first: the easy scenarios
@@ -982,118 +1301,307 @@ public class Promise<T> implements Future<T> {
             return t.promise();
         else if (future instanceof Deferred<T> d)
             return d.promise();
-        else if (future instanceof CompletableFuture<T> cf) {
-            final var result = new Promise<T>();
-            cf.thenAccept(t -> result.resolve(t));
-            cf.exceptionally(e -> {
-                if (cf.isCancelled())
-                    result.cancel();
-                else
-                    result.reject(e);
+        // second: everything else goes through the adapter, which only polls futures that have no completion hook.
+        else
+            return FutureAdapter.adapt(future);
+    }
+
+    // cool static methods:
 
-                return null;
-            });
-            return result;
+    /**
+     * @return A promise that resolves with the results of all the promises (in the same order as the promises) when
+     * all of them are fulfilled, rejects when any of the promises is rejected and cancels when any of the promises is
+     * cancelled.
+     */
+    public static <T> Promise<List<T>> all(Iterable<? extends Promise<? extends T>> promises) {
+        final var inputs = toList(promises);
+        final var results = new Object[inputs.size()];
+
+        return gather(inputs, new Gatherer<List<T>>(inputs.size()) {
+            @Override
+            void fulfilled(int index, Object result) {
+                results[index] = result;
+                countDown(index);
+            }
+
+            @Override
+            void completed() {
+                @SuppressWarnings("unchecked") final var list = (List<T>) Arrays.asList(results);
+                promise.resolve(Collections.unmodifiableList(list));
+            }
+        });
+    }
+
+    /**
+     * @param arrayConstructor Makes the array the results are put in, given its length. (String[]::new for instance)
+     * @return A promise that resolves with an array of the results of all the promises (in the same order as the
+     * promises) when all of them are fulfilled, rejects when any of the promises is rejected and cancels when any of
+     * the promises is cancelled.
+     */
+    public static <T> Promise<T[]> all(Iterable<? extends Promise<? extends T>> promises, IntFunction<T[]> arrayConstructor) {
+        final var inputs = toList(promises);
+        final var results = arrayConstructor.apply(inputs.size());
+
+        return gather(inputs, new Gatherer<T[]>(inputs.size()) {
+            @Override
+            @SuppressWarnings("unchecked")
+            void fulfilled(int index, Object result) {
+                results[index] = (T) result;
+                countDown(index);
+            }
+
+            @Override
+            void completed() {
+                promise.resolve(results);
+            }
+        });
+    }
+
+    /**
+     * @return A promise that resolves when all the promises are settled with the outcome of each promise (in the same
+     * order as the promises). An outcome is either a Result (defined with the result if the promise was fulfilled or
+     * undefined if it was cancelled) or the error the promise was rejected with. Never rejects or cancels.
+     */
+    public static <T> Promise<List<DualResult<Result<T>, Throwable>>> allSettled(Iterable<? extends Promise<? extends T>> promises) {
+        final var inputs = toList(promises);
+        final var outcomes = new Object[inputs.size()];
+
+        return gather(inputs, new Gatherer<List<DualResult<Result<T>, Throwable>>>(inputs.size()) {
+            @Override
+            @SuppressWarnings("unchecked")
+            void fulfilled(int index, Object result) {
+                outcomes[index] = DualResult.<Result<T>, Throwable>asA(new Result<>((T) result));
+                countDown(index);
+            }
+
+            @Override
+            void rejected(int index, Throwable error) {
+                outcomes[index] = DualResult.<Result<T>, Throwable>asB(error);
+                countDown(index);
+            }
+
+            @Override
+            void cancelled(int index) {
+                outcomes[index] = DualResult.<Result<T>, Throwable>asA(new Result<>());
+                countDown(index);
+            }
+
+            @Override
+            void completed() {
+                @SuppressWarnings("unchecked") final var list = (List<DualResult<Result<T>, Throwable>>) (List<?>) Arrays.asList(outcomes);
+                promise.resolve(Collections.unmodifiableList(list));
+            }
+        });
+    }
+
+    // copies the promises so that they're only iterated once, on this thread.
+    private static <E> List<E> toList(Iterable<? extends E> iterable) {
+        if (iterable instanceof Collection<? extends E> collection)
+            return new ArrayList<>(collection);
+
+        final var list = new ArrayList<E>();
+        for (final var element : iterable)
+            list.add(element);
+        return list;
+    }
+
+    private static <R> Promise<R> gather(List<? extends Promise<?>> inputs, Gatherer<R> gatherer) {
+        if (inputs.isEmpty())
+            gatherer.completed();
+
+        for (int i = 0; i < inputs.size() && gatherer.promise.isPending(); ++i)
+            addGatherCallback(inputs.get(i), gatherer, i);
+
+        return gatherer.promise;
+    }
+
+    private static <T> void addGatherCallback(Promise<T> input, Gatherer<?> gatherer, int index) {
+        input.addCallback(new GatherCallback<T>(gatherer, index));
+    }
+
+    /**
+     * Collects the outcomes of many promises into one promise. By default, rejects on the first rejection and cancels
+     * on the first cancellation.
+     */
+    private static abstract class Gatherer<R> {
+        final Promise<R> promise = new Promise<R>();
+        private final Countdown countdown;
+
+        Gatherer(int count) {
+            countdown = new Countdown(count);
         }
-        // second: the last resort:
-        else {
-            return Promise.<T>threadInit((settle) -> {
-                try {
-                    settle.resolve(future.get());
-                } catch (Throwable e) {
-                    if (future.isCancelled())
-                        settle.cancel();
-                    else
-                        settle.reject(e);
-                }
-            }).promise;
+
+        abstract void fulfilled(int index, Object result);
+
+        void rejected(int index, Throwable error) {
+            promise.reject(error);
+        }
+
+        void cancelled(int index) {
+            promise.cancel();
+        }
+
+        /**
+         * Called once every input has counted down. Settles the promise.
+         */
+        abstract void completed();
+
+        void countDown(int index) {
+            if (countdown.countDown(index))
+                completed();
         }
     }
 
-    // cool static methods:
+    // callback added to each input of a Gatherer. Doesn't make a promise of its own.
+    private static final class GatherCallback<T> implements Callback<T, Void> {
+        private final Gatherer<?> gatherer;
+        private final int index;
+
+        GatherCallback(Gatherer<?> gatherer, int index) {
+            this.gatherer = gatherer;
+            this.index = index;
+        }
+
+        @Override
+        public void applyResolve(T result) {
+            gatherer.fulfilled(index, result);
+        }
+
+        @Override
+        public void applyReject(Throwable error) {
+            gatherer.rejected(index, error);
+        }
+
+        @Override
+        public void applyCancel() {
+            gatherer.cancelled(index);
+        }
+
+        @Override
+        public Promise<Void> promise() {
+            return null;
+        }
+    }
 
     /**
-     * @return A promise that resolves when all promises are fulfilled and
-     * rejects when any of the promises is rejected and cancels when any of the promises is cancelled.
+     * Counts down from a fixed number of indexes to zero without every thread hitting the same counter. Indexes are
+     * grouped into stripes with their own counters (each on its own cache line) and only the last index of a stripe
+     * touches the shared counter.
      */
-    public static Promise<Void> all(Iterable<Promise<?>> promises) {
-        final var iter = promises.iterator();
-
-        //How many promises there are so far
-        final var count = new AtomicInteger(0);
-
-        //How many promises have been fulfilled so far
-        final var fulfilledCount = new AtomicInteger(0);
-
-        final var result = new Promise<Void>();
-
-        while (iter.hasNext() && !result.isRejected()) {
-            // add the next promise to the count
-            count.incrementAndGet();
-
-            // process the next promise
-            iter.next().thenApply(r -> {
-                // add this fulfillment to the count
-                fulfilledCount.incrementAndGet();
-
-                // fulfill the result if the iterator has been fully processed. and every promise has been fulfilled.
-                if (!iter.hasNext() && fulfilledCount.get() == count.get())
-                    result.resolve(null);
-
-                return null;
-            }, e -> {
-                result.reject(e);
-                return null;
-            }, () -> {
-                result.cancel();
-                return null;
-            });
+    private static final class Countdown {
+        private static final int STRIPE_SIZE = 64;
+        // ints per cache line
+        private static final int PADDING = 16;
+
+        private final AtomicIntegerArray stripes;
+        private final AtomicInteger remainingStripes;
+
+        Countdown(int count) {
+            final var stripeCount = (count + STRIPE_SIZE - 1) / STRIPE_SIZE;
+            stripes = new AtomicIntegerArray(stripeCount * PADDING);
+            for (int i = 0; i < stripeCount; ++i)
+                stripes.set(i * PADDING, Math.min(STRIPE_SIZE, count - i * STRIPE_SIZE));
+            remainingStripes = new AtomicInteger(stripeCount);
         }
 
-        if (fulfilledCount.get() == count.get())
-            result.resolve(null);
+        /**
+         * Counts down the given index. Each index must only be counted down once.
+         *
+         * @return Whether that was the last index.
+         */
+        boolean countDown(int index) {
+            return stripes.decrementAndGet(index / STRIPE_SIZE * PADDING) == 0 && remainingStripes.decrementAndGet() == 0;
+        }
+    }
 
-        return result;
+    /**
+     * @return A promise that resolves with the first of the futures to be fulfilled (as a promise). Rejects (with the
+     * first error) only once every future has been rejected or cancelled and at least one was rejected. Cancels if
+     * all the futures are cancelled.
+     */
+    public static <T> Promise<Promise<T>> any(Iterable<? extends Future<T>> futures) {
+        return race(futures, false, false, false);
     }
 
     /**
-     * @return A promise that resolves when any of the promises is fulfilled or rejected. Cancels if all promises are cancelled.
+     * Like any, but the moment a future is fulfilled, the rest are cancelled with Future.cancel. Tasks and Deferreds
+     * are cancelled through their canceler. Plain Promises can't be cancelled, so they are left alone.
      */
-    public static <T> Promise<Promise<T>> any(Iterable<Promise<T>> promises) {
-        final var result = new Promise<Promise<T>>();
-        final var count = new AtomicInteger(0);
-        final var cancelCount = new AtomicInteger(0);
-        final var iter = promises.iterator();
-
-
-        while (iter.hasNext() && result.isPending()) {
-            count.incrementAndGet();
-            final var promise = iter.next();
-
-            promise.thenApply(r -> {
-                result.resolve(promise);
-                return null;
-            }, e -> {
-                result.reject(e);
-                return null;
-            }, () -> {
-                cancelCount.incrementAndGet();
-                if (!iter.hasNext() && cancelCount.get() == count.get()) {
-                    result.cancel();
+    public static <T> Promise<Promise<T>> anyAndCancelLosers(Iterable<? extends Future<T>> futures, boolean mayInterruptIfRunning) {
+        return race(futures, false, true, mayInterruptIfRunning);
+    }
+
+    /**
+     * @return A promise that resolves with the first of the futures to be fulfilled (as a promise) or rejects with the
+     * error of the first to be rejected, whichever happens first. Cancels if all the futures are cancelled.
+     */
+    public static <T> Promise<Promise<T>> race(Iterable<? extends Future<T>> futures) {
+        return race(futures, true, false, false);
+    }
+
+    /**
+     * Like race, but the moment a future is fulfilled or rejected, the rest are cancelled with Future.cancel. Tasks
+     * and Deferreds are cancelled through their canceler. Plain Promises can't be cancelled, so they are left alone.
+     */
+    public static <T> Promise<Promise<T>> raceAndCancelLosers(Iterable<? extends Future<T>> futures, boolean mayInterruptIfRunning) {
+        return race(futures, true, true, mayInterruptIfRunning);
+    }
+
+    private static <T> Promise<Promise<T>> race(Iterable<? extends Future<T>> futures, boolean rejectOnFirstError, boolean cancelLosers, boolean mayInterruptIfRunning) {
+        final List<? extends Future<T>> inputs = toList(futures);
+        final var promises = new ArrayList<Promise<T>>(inputs.size());
+        for (final var future : inputs)
+            promises.add(fromFuture(future));
+
+        return gather(promises, new Gatherer<Promise<T>>(inputs.size()) {
+            // first error seen, used when every future fails.
+            private final AtomicReference<Throwable> firstError = new AtomicReference<>();
+
+            private void win(int winner) {
+                if (!cancelLosers) return;
+
+                for (int i = 0; i < inputs.size(); ++i) {
+                    if (i != winner)
+                        inputs.get(i).cancel(mayInterruptIfRunning);
                 }
-                return null;
-            });
-        }
+            }
 
-        if (cancelCount.get() == count.get()) {
-            result.cancel();
-        }
+            @Override
+            void fulfilled(int index, Object result) {
+                if (promise.resolve(promises.get(index)))
+                    win(index);
+                countDown(index);
+            }
 
-        return result;
+            @Override
+            void rejected(int index, Throwable error) {
+                if (rejectOnFirstError) {
+                    if (promise.reject(error))
+                        win(index);
+                } else {
+                    firstError.compareAndSet(null, error);
+                }
+                countDown(index);
+            }
+
+            @Override
+            void cancelled(int index) {
+                countDown(index);
+            }
+
+            @Override
+            void completed() {
+                final var error = firstError.get();
+                if (error != null)
+                    promise.reject(error);
+                else
+                    promise.cancel();
+            }
+        });
     }
 
     // inner class "Callback" used for callback methods like then and onError
-    private interface Callback<T, R> {
+    interface Callback<T, R> {
         void applyResolve(T result);
 
         void applyReject(Throwable error);
@@ -1101,6 +1609,14 @@ public class Promise<T> implements Future<T> {
         void applyCancel();
 
         Promise<R> promise();
+
+        /**
+         * @return The AsyncLocal context to run the callback in, or null to run it in whatever context the settling
+         * thread is in. Callbacks that run user code capture it when they're made.
+         */
+        default AsyncLocal.Context context() {
+            return null;
+        }
     }
 
     private class SyncCallback<R> implements Callback<T, R> {
@@ -1108,38 +1624,28 @@ public class Promise<T> implements Future<T> {
         private final Function<Throwable, R> onError;
         private final Supplier<R> onCancel;
         private final Promise<R> next = new Promise<R>();
+        private final AsyncLocal.Context context = AsyncLocal.Context.capture();
 
+        // a null handler passes the outcome on to next unchanged, except for then, which resolves next with null.
         SyncCallback(Function<T, R> then, Function<Throwable, R> onError, Supplier<R> onCancel) {
-            if (then != null)
-                this.then = then;
-            else
-                this.then = t -> null;
-
-            if (onError != null)
-                this.onError = onError;
-            else
-                this.onError = e -> {
-                    next.reject(e);
-                    return null;
-                };
-
-            if (onCancel != null)
-                this.onCancel = onCancel;
-            else
-                this.onCancel = () -> {
-                    next.cancel();
-                    return null;
-                };
+            this.then = then;
+            this.onError = onError;
+            this.onCancel = onCancel;
         }
 
         public Promise<R> promise() {
             return next;
         }
 
+        @Override
+        public AsyncLocal.Context context() {
+            return context;
+        }
+
         @Override
         public void applyResolve(T result) {
             try {
-                next.resolve(then.apply(result));
+                next.resolve(then != null ? then.apply(result) : null);
             } catch (Throwable e) {
                 next.reject(e);
             }
@@ -1147,6 +1653,11 @@ public class Promise<T> implements Future<T> {
 
         @Override
         public void applyReject(Throwable error) {
+            if (onError == null) {
+                next.reject(error);
+                return;
+            }
+
             try {
                 next.resolve(onError.apply(error));
             } catch (Throwable e) {
@@ -1156,6 +1667,11 @@ public class Promise<T> implements Future<T> {
 
         @Override
         public void applyCancel() {
+            if (onCancel == null) {
+                next.cancel();
+                return;
+            }
+
             try {
                 next.resolve(onCancel.get());
             } catch (Throwable e) {
@@ -1169,6 +1685,7 @@ public class Promise<T> implements Future<T> {
         private final Function<Throwable, Promise<R>> onError;
         private final Supplier<Promise<R>> onCancel;
         private final Promise<R> next = new Promise<R>();
+        private final AsyncLocal.Context context = AsyncLocal.Context.capture();
         private volatile boolean applied = false;
 
         AsyncCallback(Function<T, Promise<R>> then, Function<Throwable, Promise<R>> onError, Supplier<Promise<R>> onCancel) {
@@ -1198,18 +1715,36 @@ public class Promise<T> implements Future<T> {
             return next;
         }
 
+        @Override
+        public AsyncLocal.Context context() {
+            return context;
+        }
+
+        /**
+         * Settles next the same way as the given promise. A null promise is treated as one resolved with null.
+         */
+        private void follow(Promise<R> promise) {
+            if (promise == null)
+                next.resolve(null);
+            else
+                promise.thenAccept(
+                        r -> next.resolve(r),
+                        e -> next.reject(e),
+                        () -> next.cancel());
+        }
+
         @Override
         public void applyResolve(T result) {
             if (applied) return;
             synchronized (next) {
                 if (applied || next.isSettled())
                     return;
-                then.apply(result).thenAccept(
-                        r -> next.resolve(r),
-                        e -> next.reject(e),
-                        () -> next.cancel());
                 applied = true;
-                return;
+                try {
+                    follow(then.apply(result));
+                } catch (Throwable e) {
+                    next.reject(e);
+                }
             }
         }
 
@@ -1219,12 +1754,12 @@ public class Promise<T> implements Future<T> {
             synchronized (next) {
                 if (applied || next.isSettled())
                     return;
-                onError.apply(error).thenAccept(
-                        r -> next.resolve(r),
-                        e -> next.reject(e),
-                        () -> next.cancel());
                 applied = true;
-                return;
+                try {
+                    follow(onError.apply(error));
+                } catch (Throwable e) {
+                    next.reject(e);
+                }
             }
         }
 
@@ -1234,13 +1769,12 @@ public class Promise<T> implements Future<T> {
             synchronized (next) {
                 if (applied || next.isSettled())
                     return;
-
-                onCancel.get().thenAccept(
-                        r -> next.resolve(r),
-                        e -> next.reject(e),
-                        () -> next.cancel());
                 applied = true;
-                return;
+                try {
+                    follow(onCancel.get());
+                } catch (Throwable e) {
+                    next.reject(e);
+                }
             }
         }
     }
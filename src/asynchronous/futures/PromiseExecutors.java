@@ -0,0 +1,150 @@
+package asynchronous.futures;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Built-in executors for running Promise functions (Promise.asyncGet, Promise.asyncRun, Promise.threadInit, etc.)
+ * and the process-wide default used when no executor is given. The default is only for user functions: the library's
+ * own dispatch (expired timeouts and interval ticks, await deadlines, futures found done by the poller) runs on the
+ * timer wheel's ticker and pool or on the future poller, so it never starts a thread per event.
+ */
+public class PromiseExecutors {
+    private static final ThreadPerTask THREAD_PER_TASK = new ThreadPerTask();
+    private static volatile Executor defaultExecutor = null;
+
+    private PromiseExecutors() {
+    }
+
+    /**
+     * @return The executor used by Promise functions that aren't given one. If none has been set: threadPerTask(), so
+     * a function still running when main returns keeps the JVM alive, as it always has.
+     */
+    public static Executor getDefault() {
+        final var executor = defaultExecutor;
+        return executor != null ? executor : THREAD_PER_TASK;
+    }
+
+    /**
+     * Sets the executor used by Promise functions that aren't given one. virtualThreadPerTask(), cachedPool() and
+     * boundedPool() make starting a function cheaper, but their threads are daemons (virtual threads always are), so
+     * functions still running when main returns are dropped.
+     */
+    public static void setDefault(Executor executor) {
+        if (executor == null) throw new NullPointerException();
+        defaultExecutor = executor;
+    }
+
+    /**
+     * @return An executor with at most the given number of daemon threads. Tasks queue up when every thread is busy.
+     * Idle threads die after a minute.
+     */
+    public static ExecutorService boundedPool(int maxThreads) {
+        final var pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreadFactory("promise-bounded"));
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * @return An executor that hands each task to an idle daemon thread, and starts a new one when every thread is busy,
+     * up to maxThreads. Past that, tasks queue up. Unlike boundedPool, a task that blocks only takes its own thread out
+     * of use while there's room to grow. Idle threads die after a minute.
+     */
+    public static ExecutorService elasticPool(int maxThreads) {
+        // only takes a task when an idle thread is waiting for one. Otherwise the pool starts a thread for it, or, once
+        // it's at maxThreads, rejects it into the queue below.
+        final var queue = new LinkedTransferQueue<Runnable>() {
+            @Override
+            public boolean offer(Runnable task) {
+                return tryTransfer(task);
+            }
+        };
+        return new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, queue, daemonThreadFactory("promise-elastic"),
+                (task, pool) -> {
+                    if (pool.isShutdown())
+                        throw new RejectedExecutionException("The pool has been shut down.");
+                    queue.add(task);
+                });
+    }
+
+    /**
+     * @return An executor that reuses idle daemon threads and creates new ones when none are idle. Idle threads die
+     * after a minute.
+     */
+    public static ExecutorService cachedPool() {
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), daemonThreadFactory("promise-cached"));
+    }
+
+    /**
+     * @return An executor that starts a new (non-daemon) platform thread for every task. The default.
+     */
+    public static Executor threadPerTask() {
+        return THREAD_PER_TASK;
+    }
+
+    /**
+     * @return Executors.newVirtualThreadPerTaskExecutor()
+     * @throws UnsupportedOperationException If the JVM doesn't support virtual threads.
+     */
+    public static ExecutorService virtualThreadPerTask() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JVM.", e);
+        }
+    }
+
+    /**
+     * @return Whether the JVM supports virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreads.FACTORY != null;
+    }
+
+    /**
+     * @return A ThreadFactory that makes virtual threads or null if the JVM doesn't support them.
+     */
+    public static ThreadFactory virtualThreadFactory() {
+        return VirtualThreads.FACTORY;
+    }
+
+    private static ThreadFactory daemonThreadFactory(String namePrefix) {
+        final var count = new AtomicInteger(0);
+        return func -> {
+            final var thread = new Thread(func, namePrefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // the executor behind threadPerTask. PromiseAndThread makes the thread itself so that it can hand it out.
+    static final class ThreadPerTask implements Executor {
+        Thread newThread(Runnable func) {
+            return new Thread(func);
+        }
+
+        @Override
+        public void execute(Runnable func) {
+            newThread(func).start();
+        }
+    }
+
+    // lazily looks up Thread.ofVirtual().factory() so that this compiles and runs on JVMs without virtual threads.
+    private static class VirtualThreads {
+        static final ThreadFactory FACTORY;
+
+        static {
+            ThreadFactory factory;
+            try {
+                final var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                final var factoryMethod = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+                factory = (ThreadFactory) factoryMethod.invoke(builder);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                factory = null;
+            }
+            FACTORY = factory;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package asynchronous.futures;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A FutureTask that settles a promise when it's done. Submit it to any executor in place of a plain FutureTask and
+ * Promise.fromFuture will return its promise directly instead of polling it.
+ */
+public class PromiseFutureTask<T> extends FutureTask<T> {
+    private final Promise<T> promise = new Promise<>();
+    private final Promise<T>.Settle settle = promise.new Settle();
+
+    public PromiseFutureTask(Callable<T> callable) {
+        super(callable);
+    }
+
+    public PromiseFutureTask(Runnable runnable, T result) {
+        super(runnable, result);
+    }
+
+    /**
+     * @return The promise settled by this task.
+     */
+    public Promise<T> promise() {
+        return promise;
+    }
+
+    @Override
+    protected void done() {
+        FutureAdapter.settleFrom(this, settle);
+    }
+}
@@ -1,6 +1,7 @@
 package asynchronous.futures;
 
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -41,16 +42,13 @@ public class Task<T> implements Future<T> {
 	
 	@Override
 	public boolean cancel(boolean mayInterruptIfRunning) {
-		synchronized(_promise) {
-			if (_promise.isSettled())
-				return false;
-			else {
-				if (canceler != null)
-					canceler.accept(mayInterruptIfRunning);
-				settle.cancel();
-				return true;
-			}
-		}
+		// settle first so that whatever the canceler causes (an interrupted thread rejecting the promise for instance) can't win the race.
+		if (!settle.cancel())
+			return false;
+
+		if (canceler != null)
+			canceler.accept(mayInterruptIfRunning);
+		return true;
 	}
 	@Override
 	public boolean isCancelled() {
@@ -69,24 +67,70 @@ public class Task<T> implements Future<T> {
 		return _promise.get(timeout, unit);
 	}
 	
+	/** A task and a handle on whatever thread runs the initializer. Cancelling the task with mayInterruptIfRunning interrupts that thread. */
 	public static class TaskAndThread<T>{
 		public final Task<T> task;
+		/**
+		 * The thread started for the initializer. Only set with PromiseExecutors.threadPerTask() (the default); null
+		 * with any other executor.
+		 * @deprecated Other executors reuse threads, so use getThread and interrupt, which work with any executor.
+		 */
+		@Deprecated
 		public final Thread thread;
+		private final Promise.PromiseAndThread<T> promiseAndThread;
+		@SuppressWarnings("deprecation")
+		TaskAndThread(Task<T> task, Promise.PromiseAndThread<T> promiseAndThread) {
+			this.task = task;
+			this.thread = promiseAndThread.thread;
+			this.promiseAndThread = promiseAndThread;
+		}
+		/** @deprecated Made by threadInit. */
+		@Deprecated
 		public TaskAndThread(Task<T> task, Thread thread) {
 			this.task = task;
 			this.thread = thread;
+			this.promiseAndThread = null;
+		}
+		/** @return The thread running the initializer or null if it hasn't started yet or has finished. */
+		@SuppressWarnings("deprecation")
+		public Thread getThread() {
+			return promiseAndThread != null ? promiseAndThread.getThread() : thread;
+		}
+		/**
+		 * Interrupts the thread running the initializer if it is running.
+		 * @return Whether a thread was interrupted.
+		 */
+		@SuppressWarnings("deprecation")
+		public boolean interrupt() {
+			if (promiseAndThread != null)
+				return promiseAndThread.interrupt();
+			if (thread == null)
+				return false;
+			thread.interrupt();
+			return true;
 		}
 	}
 	
-	public static <T> TaskAndThread<T> threadInit(Consumer<Promise<T>.Settle> initializer){
-		final var promiseAndThread = Promise.<T>threadInit(initializer);
+	/**
+	 * A task over an existing promise: cancelling it cancels the promise and then calls the canceler. The promise keeps
+	 * its own type, so a task over an IntPromise hands that IntPromise back from promise().
+	 */
+	public static <T> Task<T> of(Promise<T> promise, Consumer<Boolean> canceler){
+		return new Task<T>(promise, canceler);
+	}
+	
+	public static <T> TaskAndThread<T> threadInit(Consumer<Promise<T>.Settle> initializer, Executor executor){
+		final var promiseAndThread = Promise.<T>threadInit(initializer, executor);
 		final var task = new Task<T>(promiseAndThread.promise, null);
-		final var thread = promiseAndThread.thread;
 		task.canceler = (interruptWhileRunning) -> {
 			if (interruptWhileRunning)
-				thread.interrupt();
+				promiseAndThread.interrupt();
 		};
 		
-		return new TaskAndThread<T>(task, thread);
+		return new TaskAndThread<T>(task, promiseAndThread);
+	}
+	
+	public static <T> TaskAndThread<T> threadInit(Consumer<Promise<T>.Settle> initializer){
+		return threadInit(initializer, PromiseExecutors.getDefault());
 	}
 }
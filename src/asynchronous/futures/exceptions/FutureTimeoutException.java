@@ -0,0 +1,14 @@
+package asynchronous.futures.exceptions;
+
+import java.util.concurrent.Future;
+
+/**
+ * Thrown by an await whose deadline passed before the awaited future settled. The future has been cancelled.
+ */
+public class FutureTimeoutException extends FutureCancellationException {
+	private static final long serialVersionUID = 1L;
+
+	public FutureTimeoutException(Future<?> future) {
+		super(future, "The deadline passed before the awaited future settled.");
+	}
+}
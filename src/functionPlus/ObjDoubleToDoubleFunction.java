@@ -0,0 +1,6 @@
+package functionPlus;
+
+@FunctionalInterface
+public interface ObjDoubleToDoubleFunction<T> {
+    public double apply(T t, double value);
+}
@@ -0,0 +1,6 @@
+package functionPlus;
+
+@FunctionalInterface
+public interface ObjIntToIntFunction<T> {
+    public int apply(T t, int value);
+}
@@ -0,0 +1,6 @@
+package functionPlus;
+
+@FunctionalInterface
+public interface ObjLongToLongFunction<T> {
+    public long apply(T t, long value);
+}
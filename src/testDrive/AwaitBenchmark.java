@@ -0,0 +1,42 @@
+package testDrive;
+
+import asynchronous.asyncAwait.Async;
+import asynchronous.futures.Promise;
+
+/**
+ * Measures awaits per second inside one async function, for promises that are already resolved and for promises that
+ * settle on another thread.
+ */
+public class AwaitBenchmark {
+    private static final int AWAITS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        final var awaits = args.length > 0 ? Integer.parseInt(args[0]) : AWAITS;
+
+        // warm up
+        measure(awaits / 10, true);
+
+        System.out.printf("resolved: %,.0f awaits per second%n", measure(awaits, true));
+        System.out.printf("pending:  %,.0f awaits per second%n", measure(awaits / 100, false));
+    }
+
+    private static double measure(int awaits, boolean resolved) throws Exception {
+        final var async = new Async();
+        final var resolvedPromise = Promise.resolved(1);
+
+        final var loop = async.def((Async.Await await) -> {
+            long sum = 0;
+            for (int i = 0; i < awaits; ++i)
+                sum += await.apply(resolved ? resolvedPromise : Promise.asyncGet(() -> 1).promise);
+            return sum;
+        });
+
+        final var start = System.nanoTime();
+        final var result = loop.get();
+        async.execute();
+        if (result.get() != awaits) throw new AssertionError();
+        final var elapsed = System.nanoTime() - start;
+
+        return awaits / (elapsed / 1e9);
+    }
+}
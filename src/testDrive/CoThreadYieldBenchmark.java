@@ -0,0 +1,47 @@
+package testDrive;
+
+import asynchronous.CoThread;
+
+/**
+ * Measures how many yields per second a CoThread manages when driven by resume (blocking, no allocation) and by run
+ * (one promise per yield), with and without spinning before parking.
+ */
+public class CoThreadYieldBenchmark {
+    private static final int YIELDS = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        final var yields = args.length > 0 ? Integer.parseInt(args[0]) : YIELDS;
+
+        // warm up
+        measure(yields / 10, false, 0);
+        measure(yields / 10, true, 0);
+
+        for (final var spinCount : new int[]{0, 1000}) {
+            System.out.printf("spin %4d, resume: %,.0f yields per second%n", spinCount, measure(yields, true, spinCount));
+            System.out.printf("spin %4d, run:    %,.0f yields per second%n", spinCount, measure(yields, false, spinCount));
+        }
+    }
+
+    private static double measure(int yields, boolean useResume, int spinCount) throws Exception {
+        CoThread.setSpinCount(spinCount);
+
+        try (final var coThread = new CoThread<Integer>(yield -> {
+            try {
+                for (int i = 0; ; ++i)
+                    yield.accept(i);
+            } catch (InterruptedException e) {
+            }
+        })) {
+            final var start = System.nanoTime();
+            for (int i = 0; i < yields; ++i) {
+                if (useResume)
+                    coThread.resume();
+                else
+                    coThread.run().get();
+            }
+            final var elapsed = System.nanoTime() - start;
+
+            return yields / (elapsed / 1e9);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package testDrive;
+
+import asynchronous.asyncAwait.Async;
+
+/**
+ * Measures how long a call to an async function that never awaits takes to settle, with and without eager start.
+ * Without it, every call waits for a run of Async.execute; with it, the call returns a settled promise.
+ */
+public class EagerStartBenchmark {
+    private static final int CALLS = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        final var calls = args.length > 0 ? Integer.parseInt(args[0]) : CALLS;
+
+        // warm up
+        measure(calls / 10, true);
+        measure(calls / 10, false);
+
+        System.out.printf("eager:  %,.1f microseconds per call%n", measure(calls, true));
+        System.out.printf("queued: %,.1f microseconds per call%n", measure(calls, false));
+    }
+
+    private static double measure(int calls, boolean eager) throws Exception {
+        final var async = new Async();
+        async.setEagerStart(eager);
+        final var noAwait = async.def((Async.Await await) -> 1);
+
+        final var start = System.nanoTime();
+        for (int i = 0; i < calls; ++i) {
+            final var result = noAwait.get();
+            if (!eager)
+                async.execute();
+            if (!result.isSettled()) throw new AssertionError();
+        }
+        final var elapsed = System.nanoTime() - start;
+
+        return elapsed / 1e3 / calls;
+    }
+}
@@ -0,0 +1,79 @@
+package testDrive;
+
+import asynchronous.CoThread;
+import asynchronous.Generator;
+
+/**
+ * Measures how many values per second a lazy producer delivers: through CoThread.run (a handoff and a promise per
+ * value), through a Generator with batches of 1, and through a Generator with the default batches as a stream.
+ */
+public class GeneratorBenchmark {
+    private static final int VALUES = 2_000_000;
+
+    public static void main(String[] args) throws Exception {
+        final var values = args.length > 0 ? Integer.parseInt(args[0]) : VALUES;
+
+        // warm up
+        coThread(values / 100);
+        generator(values / 10, 1);
+        stream(values / 10);
+
+        System.out.printf("CoThread.run:        %,.0f values per second%n", values / 100 / seconds(() -> coThread(values / 100)));
+        System.out.printf("Generator, batch 1:  %,.0f values per second%n", values / 10 / seconds(() -> generator(values / 10, 1)));
+        System.out.printf("Generator, stream:   %,.0f values per second%n", values / seconds(() -> stream(values)));
+    }
+
+    private static Generator<Integer> counter(int values, int batchSize) {
+        return new Generator<>(yields -> {
+            try {
+                for (int i = 0; i < values; ++i)
+                    yields.accept(i);
+            } catch (InterruptedException e) {
+            }
+        }, batchSize, values);
+    }
+
+    private static void coThread(int values) throws Exception {
+        try (final var coThread = new CoThread<Integer>(yield -> {
+            try {
+                for (int i = 0; i < values; ++i)
+                    yield.accept(i);
+            } catch (InterruptedException e) {
+            }
+        })) {
+            long sum = 0;
+            for (int i = 0; i < values; ++i)
+                sum += coThread.run().get();
+            check(sum, values);
+        }
+    }
+
+    private static void generator(int values, int batchSize) {
+        try (final var generator = counter(values, batchSize)) {
+            long sum = 0;
+            for (final var value : generator)
+                sum += value;
+            check(sum, values);
+        }
+    }
+
+    private static void stream(int values) {
+        try (final var stream = counter(values, 64).stream()) {
+            check(stream.mapToLong(Integer::longValue).sum(), values);
+        }
+    }
+
+    private static void check(long sum, int values) {
+        if (sum != (long) values * (values - 1) / 2) throw new AssertionError();
+    }
+
+    private interface Run {
+        void run() throws Exception;
+    }
+
+    private static double seconds(Run run) throws Exception {
+        final var start = System.nanoTime();
+        run.run();
+        return (System.nanoTime() - start) / 1e9;
+    }
+}
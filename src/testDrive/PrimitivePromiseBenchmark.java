@@ -0,0 +1,68 @@
+package testDrive;
+
+import asynchronous.futures.IntPromise;
+import asynchronous.futures.Promise;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares a chain of thenApply on a boxed Promise&lt;Integer&gt; with the same chain of thenInt on an IntPromise:
+ * bytes allocated per stage and stages per second. Results stay above the Integer cache so the boxed chain really
+ * allocates its boxes.
+ */
+public class PrimitivePromiseBenchmark {
+    private static final int STAGES = 1_000_000;
+    private static final int START = 1_000;
+
+    public static void main(String[] args) throws Exception {
+        final var stages = args.length > 0 ? Integer.parseInt(args[0]) : STAGES;
+
+        // warm up
+        for (int i = 0; i < 5; ++i) {
+            boxed(stages / 10);
+            primitive(stages / 10);
+        }
+
+        // alternate, so that neither chain always runs on the heap the other one left behind.
+        for (int round = 0; round < 3; ++round) {
+            report("boxed:    ", stages, () -> boxed(stages));
+            report("primitive:", stages, () -> primitive(stages));
+        }
+    }
+
+    private static void boxed(int stages) throws Exception {
+        final var promise = Promise.<Integer>externalInit();
+        Promise<Integer> last = promise.promise;
+        for (int i = 0; i < stages; ++i)
+            last = last.thenApply(x -> x + 1);
+        promise.settle.resolve(START);
+        if (last.get() != START + stages) throw new AssertionError();
+    }
+
+    private static void primitive(int stages) throws Exception {
+        final var promise = Promise.<Integer>externalInit();
+        IntPromise last = IntPromise.from(promise.promise);
+        for (int i = 0; i < stages; ++i)
+            last = last.thenInt(x -> x + 1);
+        promise.settle.resolve(START);
+        if (last.getInt() != START + stages) throw new AssertionError();
+    }
+
+    private interface Chain {
+        void run() throws Exception;
+    }
+
+    private static void report(String label, int stages, Chain chain) throws Exception {
+        final var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final var id = Thread.currentThread().getId();
+        System.gc();
+
+        final var allocatedBefore = threads.getThreadAllocatedBytes(id);
+        final var start = System.nanoTime();
+        chain.run();
+        final var elapsed = System.nanoTime() - start;
+        final var allocated = threads.getThreadAllocatedBytes(id) - allocatedBefore;
+
+        System.out.printf("%s %6.1f bytes per stage, %,.0f stages per second%n", label, (double) allocated / stages, stages / (elapsed / 1e9));
+    }
+}
@@ -0,0 +1,61 @@
+package testDrive;
+
+import asynchronous.futures.Promise;
+
+import java.util.function.Consumer;
+
+/**
+ * Measures how much heap a pending Promise retains with 0, 1, 2 and 4 callbacks attached. Run with a fixed heap
+ * (-Xms1g -Xmx1g for instance) for stable numbers.
+ */
+public class PromiseFootprintBenchmark {
+    private static final int COUNT = 1_000_000;
+
+    public static void main(String[] args) {
+        final var count = args.length > 0 ? Integer.parseInt(args[0]) : COUNT;
+
+        // warm up
+        measure(count / 10, 1);
+
+        for (final var callbackCount : new int[]{0, 1, 2, 4}) {
+            System.out.printf("%d callback(s): %.1f bytes per promise%n", callbackCount, measure(count, callbackCount));
+        }
+    }
+
+    /**
+     * @return The average heap retained per promise, including the callbacks' own promises and handler lambdas.
+     */
+    private static double measure(int count, int callbackCount) {
+        final var promises = new Object[count];
+        final Consumer<Object> handler = r -> {
+        };
+
+        final var before = usedHeap();
+        for (int i = 0; i < count; ++i) {
+            final var promise = Promise.externalInit().promise;
+            for (int j = 0; j < callbackCount; ++j)
+                promise.thenAccept(handler);
+
+            promises[i] = promise;
+        }
+        final var after = usedHeap();
+
+        // keep the promises reachable until after the measurement.
+        if (promises[count - 1] == null) throw new AssertionError();
+
+        return (after - before) / (double) count;
+    }
+
+    private static long usedHeap() {
+        final var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; ++i) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}